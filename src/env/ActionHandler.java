@@ -0,0 +1,14 @@
+package env;
+
+import jason.asSyntax.Structure;
+
+//An environment action registered with GridEnv (built-in or via an action=name/arity:Class init arg).
+//Classes named in init args need a public no-arg constructor.
+
+@FunctionalInterface
+public interface ActionHandler {
+
+    // executes the action of agent ag (model agent id) on env.model() and returns its reward
+    // (before the carrying reward of STEP actions)
+    double execute(GridEnv env, int ag, Structure action) throws Exception;
+}
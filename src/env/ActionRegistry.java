@@ -0,0 +1,125 @@
+package env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import jason.asSyntax.Structure;
+
+//Action handlers of GridEnv keyed by (functor, arity), with per-handler call counts and time spent.
+//Lookup is one HashMap get on the functor plus an array index on the arity.
+//Extra actions come from init args: action=name/arity:fully.qualified.Class[:step|control|macro]
+
+final class ActionRegistry {
+
+    // what GridEnv adds around the handler's own reward
+    enum Kind {
+        STEP,    // counts one step and adds the carrying reward (move, pick, ...)
+        CONTROL, // adds the carrying reward only (reset, next_episode)
+        MACRO;   // handler does its own per-step accounting (follow, move_to)
+
+        static Kind parse(String s) {
+            return Kind.valueOf(s.trim().toUpperCase());
+        }
+    }
+
+    static final class Entry {
+        final String name;
+        final int arity;
+        final Kind kind;
+        final ActionHandler handler;
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        Entry(String name, int arity, Kind kind, ActionHandler handler) {
+            this.name = name;
+            this.arity = arity;
+            this.kind = kind;
+            this.handler = handler;
+        }
+
+        double execute(GridEnv env, int ag, Structure action) throws Exception {
+            long t0 = System.nanoTime();
+            try {
+                return handler.execute(env, ag, action);
+            } finally {
+                nanos.add(System.nanoTime() - t0);
+                calls.increment();
+            }
+        }
+    }
+
+    // functor -> handlers indexed by arity
+    private final Map<String, Entry[]> byFunctor = new HashMap<>();
+    private final List<Entry> entries = new ArrayList<>();
+
+    void register(String name, int arity, Kind kind, ActionHandler handler) {
+        Entry e = new Entry(name, arity, kind, handler);
+        Entry[] a = byFunctor.get(name);
+        if (a == null || a.length <= arity) {
+            a = a == null ? new Entry[arity + 1] : Arrays.copyOf(a, arity + 1);
+            byFunctor.put(name, a);
+        }
+        if (a[arity] != null) entries.remove(a[arity]);
+        a[arity] = e;
+        entries.add(e);
+    }
+
+    // same handler and counters under another functor (grab == pick)
+    void alias(String alias, String name, int arity) {
+        Entry e = lookup(name, arity);
+        if (e == null) throw new IllegalArgumentException("no action " + name + "/" + arity);
+        Entry[] a = byFunctor.get(alias);
+        if (a == null || a.length <= arity) {
+            a = a == null ? new Entry[arity + 1] : Arrays.copyOf(a, arity + 1);
+            byFunctor.put(alias, a);
+        }
+        a[arity] = e;
+    }
+
+    Entry lookup(String name, int arity) {
+        Entry[] a = byFunctor.get(name);
+        return a != null && arity < a.length ? a[arity] : null;
+    }
+
+    // registers every action=name/arity:Class[:kind] init arg
+    void registerFromArgs(String[] args) {
+        if (args == null) return;
+        for (String raw : args) {
+            String s = raw.replace("\"", "").trim();
+            int eq = s.indexOf('=');
+            if (eq < 0 || !s.substring(0, eq).trim().equalsIgnoreCase("action")) continue;
+
+            String[] p = s.substring(eq + 1).trim().split(":");
+            int slash = p[0].lastIndexOf('/');
+            if (p.length < 2 || slash < 1) {
+                throw new IllegalArgumentException("expected action=name/arity:Class[:kind], got " + raw);
+            }
+            String name = p[0].substring(0, slash).trim();
+            int arity = Integer.parseInt(p[0].substring(slash + 1).trim());
+            Kind kind = p.length > 2 ? Kind.parse(p[2]) : Kind.STEP;
+            try {
+                Object h = Class.forName(p[1].trim()).getDeclaredConstructor().newInstance();
+                register(name, arity, kind, (ActionHandler) h);
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("cannot create action handler " + p[1], e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Actions:");
+        for (Entry e : entries) {
+            long n = e.calls.sum();
+            if (n == 0) continue;
+            long ns = e.nanos.sum();
+            sb.append(String.format("%n  %-14s calls=%-10d total=%.1f ms  avg=%.0f ns",
+                    e.name + "/" + e.arity, n, ns / 1e6, (double) ns / n));
+        }
+        return sb.toString();
+    }
+}
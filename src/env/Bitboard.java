@@ -0,0 +1,71 @@
+package env;
+
+import java.util.Arrays;
+
+//One bitset per object bit of the GridModel masks (OBST, BRUSH, ...), indexed by cell = y * width + x.
+//The 5x5 PDF layout fits in a single long per object; bigger grids use width * height / 64 words.
+//Occupancy tests and obstacle masks become word operations without allocation.
+//Object enumeration is not done here but by ObjectIndex, in both storage modes: the index lists the k
+//cells of an object in O(k), while scanning planes costs width * height / 64 words even for the single
+//door, and it keeps objectCells/objectLocation in the same order whichever storage is selected.
+
+final class Bitboard {
+
+    private final int cells;
+    private final int words;
+
+    // planes[b] holds the cells that have object bit (1 << b); allocated on first use
+    private final long[][] planes = new long[32][];
+
+    Bitboard(int cells) {
+        this.cells = cells;
+        this.words = (cells + 63) >>> 6;
+    }
+
+    int cells() { return cells; }
+
+    // allocates the planes of mask up front, so concurrent writers never race on a lazy allocation
+    void reserve(int mask) {
+        for (int v = mask; v != 0; v &= v - 1) plane(Integer.numberOfTrailingZeros(v));
+    }
+
+    void add(int value, int cell) {
+        long bit = 1L << cell;
+        int w = cell >>> 6;
+        for (int v = value; v != 0; v &= v - 1) {
+            plane(Integer.numberOfTrailingZeros(v))[w] |= bit;
+        }
+    }
+
+    void remove(int value, int cell) {
+        long bit = ~(1L << cell);
+        int w = cell >>> 6;
+        for (int v = value; v != 0; v &= v - 1) {
+            long[] p = planes[Integer.numberOfTrailingZeros(v)];
+            if (p != null) p[w] &= bit;
+        }
+    }
+
+    // true if the cell holds any of the objects in mask
+    boolean has(int mask, int cell) {
+        long bit = 1L << cell;
+        int w = cell >>> 6;
+        for (int v = mask; v != 0; v &= v - 1) {
+            long[] p = planes[Integer.numberOfTrailingZeros(v)];
+            if (p != null && (p[w] & bit) != 0) return true;
+        }
+        return false;
+    }
+
+    void clear() {
+        for (long[] p : planes) {
+            if (p != null) Arrays.fill(p, 0L);
+        }
+    }
+
+    private long[] plane(int b) {
+        long[] p = planes[b];
+        if (p == null) p = planes[b] = new long[words];
+        return p;
+    }
+}
@@ -0,0 +1,121 @@
+package env;
+
+import java.util.Arrays;
+
+//BFS distance / next-hop fields towards fixed destinations (the object locations of the layout).
+//One field is kept per destination cell, so after the first query distance, next-step and path lookups
+//towards that cell are O(1) per step. Fields live in a bounded LRU keyed by (wall hash, destination),
+//so walls that come back, or destinations that move around between episodes, reuse earlier fields.
+
+final class DistanceOracle {
+
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // Same neighbour order as PathFinding's grid engine: up, left, right, down
+    private static final int[] DX = {0, -1, 1, 0};
+    private static final int[] DY = {-1, 0, 0, 1};
+
+    // dist[c] = steps from c to the target; the next hop is the first neighbour (in DX/DY order)
+    // one step closer, found in O(1) without storing a second array (fields get big on large layouts)
+    static final class Field {
+        final int target;
+        final int cols, rows;
+        final int[] dist;
+
+        Field(int target, int cols, int rows, int[] dist) {
+            this.target = target;
+            this.cols = cols;
+            this.rows = rows;
+            this.dist = dist;
+        }
+
+        // neighbour of c one step closer to the target, -1 at the target or if unreachable
+        int next(int c) {
+            int d = dist[c];
+            if (d == 0 || d == UNREACHABLE) return -1;
+            int x = c % cols, y = c / cols;
+            for (int k = 0; k < 4; k++) {
+                int nx = x + DX[k], ny = y + DY[k];
+                if (nx < 0 || nx >= cols || ny < 0 || ny >= rows) continue;
+                int n = ny * cols + nx;
+                if (dist[n] == d - 1) return n;
+            }
+            return -1;
+        }
+    }
+
+    // fields are full-grid int[]s, so the cache is capped by ints held (128 MB) as well as by count:
+    // 8 fields at 2000x2000, the full 64 on small layouts
+    private static final long MAX_FIELD_INTS = 1L << 25;
+
+    private final LayoutCache<Field> fields =
+            new LayoutCache<>("distanceFields", 64, MAX_FIELD_INTS, f -> f.dist.length);
+
+    Field field(GridEnv.GridModel m, int tx, int ty) {
+        int target = ty * m.getWidth() + tx;
+        return fields.get(Layout.mix(m.wallHash * 31 + target), k -> build(m.blockedGrid(), tx, ty));
+    }
+
+    // steps from (x,y) to (tx,ty), UNREACHABLE if there is no path
+    int distance(GridEnv.GridModel m, int x, int y, int tx, int ty) {
+        if (!m.inGrid(x, y) || !m.inGrid(tx, ty)) return UNREACHABLE;
+        return field(m, tx, ty).dist[y * m.getWidth() + x];
+    }
+
+    // next cell index on a shortest path from (x,y) to (tx,ty), -1 if already there or unreachable
+    int nextStep(GridEnv.GridModel m, int x, int y, int tx, int ty) {
+        if (!m.inGrid(x, y) || !m.inGrid(tx, ty)) return -1;
+        return field(m, tx, ty).next(y * m.getWidth() + x);
+    }
+
+    // whole path as cell indices (start and target included), empty if unreachable
+    int[] path(GridEnv.GridModel m, int x, int y, int tx, int ty) {
+        int d = distance(m, x, y, tx, ty);
+        if (d == UNREACHABLE) return new int[0];
+        Field f = field(m, tx, ty);
+        int[] out = new int[d + 1];
+        int c = y * m.getWidth() + x;
+        for (int i = 0; i <= d; i++) {
+            out[i] = c;
+            c = f.next(c);
+        }
+        return out;
+    }
+
+    void clear() {
+        fields.clear();
+    }
+
+    LayoutCache<Field> cache() {
+        return fields;
+    }
+
+    static Field build(boolean[][] blocked, int tx, int ty) {
+        int rows = blocked.length;
+        int cols = blocked[0].length;
+        int[] dist = new int[rows * cols];
+        Arrays.fill(dist, UNREACHABLE);
+
+        int target = ty * cols + tx;
+        if (blocked[ty][tx]) return new Field(target, cols, rows, dist);
+
+        // plain int FIFO: each cell enters at most once
+        int[] queue = new int[rows * cols];
+        int head = 0, tail = 0;
+        dist[target] = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int c = queue[head++];
+            int cx = c % cols, cy = c / cols;
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + DX[d], ny = cy + DY[d];
+                if (nx < 0 || nx >= cols || ny < 0 || ny >= rows || blocked[ny][nx]) continue;
+                int n = ny * cols + nx;
+                if (dist[n] != UNREACHABLE) continue;
+                dist[n] = dist[c] + 1;
+                queue[tail++] = n;
+            }
+        }
+        return new Field(target, cols, rows, dist);
+    }
+}
@@ -0,0 +1,208 @@
+package env;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+//Environment instrumentation: action latencies, A* expansions and path lengths, percepts per update,
+//episode steps and utilities. Everything is recorded into LongAdder-based log2 histograms (no locks on
+//the hot path) and written every few seconds by a daemon thread:
+//  metrics=<file>.csv   appends one row per metric per flush
+//  metrics=<file>.json  rewrites a snapshot of all metrics
+//  metrics.interval=<seconds> (default 10)
+//Without the metrics init arg GridEnv holds no EnvMetrics and the only cost is a null check per action
+//and per path search (GridModel.searched reports searches to its own environment's metrics).
+
+final class EnvMetrics {
+
+    // log2 buckets: bucket b holds values in [2^(b-1), 2^b), bucket 0 holds 0 (and negatives)
+    static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        void record(long v) {
+            buckets[v <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(v)].increment();
+            count.increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        long count() { return count.sum(); }
+        long sum()   { return sum.sum(); }
+        long max()   { return count() == 0 ? 0 : max.get(); }
+
+        double mean() {
+            long n = count();
+            return n == 0 ? 0.0 : (double) sum() / n;
+        }
+
+        // upper bound of the bucket holding quantile q
+        long quantile(double q) {
+            long n = count();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(q * n), seen = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b].sum();
+                if (seen >= rank) return b == 0 ? 0 : Math.min(max(), (1L << b) - 1);
+            }
+            return max();
+        }
+    }
+
+    // one path search of the environment's model (GridModel.searched); expanded is -1 if unknown
+    void search(int expanded, int pathLength) {
+        if (expanded >= 0) expansions.record(expanded);
+        if (pathLength > 0) this.pathLength.record(pathLength - 1);
+        else unreachable.increment();
+    }
+
+    private final Map<ActionRegistry.Entry, Histogram> actions = new ConcurrentHashMap<>();
+    final Histogram expansions = new Histogram();
+    final Histogram pathLength = new Histogram();
+    final LongAdder unreachable = new LongAdder();
+    final Histogram percepts = new Histogram();
+    final Histogram episodeSteps = new Histogram();
+    private final DoubleAdder utilitySum = new DoubleAdder();
+
+    private final Path file;
+    private final boolean json;
+    private final ScheduledExecutorService flusher;
+    private final long startNanos = System.nanoTime();
+
+    private EnvMetrics(Path file, long intervalSeconds) {
+        this.file = file;
+        this.json = file.toString().toLowerCase().endsWith(".json");
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "gridenv-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleAtFixedRate(this::flushQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // null (disabled) unless the metrics init arg names an output file
+    static EnvMetrics fromArgs(String[] args) {
+        String f = GridEnv.initArg(args, "metrics", "");
+        if (f.isEmpty() || f.equalsIgnoreCase("off")) return null;
+        long interval = Long.parseLong(GridEnv.initArg(args, "metrics.interval", "10"));
+        return new EnvMetrics(Paths.get(f), Math.max(1, interval));
+    }
+
+    void action(ActionRegistry.Entry handler, long nanos) {
+        Histogram h = actions.get(handler);
+        if (h == null) h = actions.computeIfAbsent(handler, k -> new Histogram());
+        h.record(nanos);
+    }
+
+    void percepts(int n) {
+        percepts.record(n);
+    }
+
+    void episode(int steps, double utility) {
+        episodeSteps.record(steps);
+        utilitySum.add(utility);
+    }
+
+    void close() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("metrics: cannot write " + file + ": " + e);
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        if (json) {
+            try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                w.write(toJson());
+            }
+            return;
+        }
+        boolean header = !Files.exists(file) || Files.size(file) == 0;
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (header) w.write("elapsed_ms,metric,count,sum,mean,p50,p90,p99,max\n");
+            long t = (System.nanoTime() - startNanos) / 1_000_000;
+            for (Map.Entry<ActionRegistry.Entry, Histogram> e : actions.entrySet()) {
+                csv(w, t, "action_ns:" + e.getKey().name + "/" + e.getKey().arity, e.getValue());
+            }
+            csv(w, t, "astar_expanded", expansions);
+            csv(w, t, "path_length", pathLength);
+            w.write(t + ",path_unreachable," + unreachable.sum() + ",,,,,,\n");
+            csv(w, t, "percepts_per_update", percepts);
+            csv(w, t, "episode_steps", episodeSteps);
+            w.write(t + ",episode_utility," + episodeSteps.count() + "," + utilitySum.sum() + "," + meanUtility() + ",,,,\n");
+        }
+    }
+
+    private static void csv(Writer w, long t, String name, Histogram h) throws IOException {
+        w.write(t + "," + name + "," + h.count() + "," + h.sum() + "," + h.mean() + ","
+                + h.quantile(0.5) + "," + h.quantile(0.9) + "," + h.quantile(0.99) + "," + h.max() + "\n");
+    }
+
+    private double meanUtility() {
+        long n = episodeSteps.count();
+        return n == 0 ? 0.0 : utilitySum.sum() / n;
+    }
+
+    String toJson() {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"elapsed_ms\": ").append((System.nanoTime() - startNanos) / 1_000_000).append(",\n");
+        sb.append("  \"actions_ns\": {");
+        String sep = "\n";
+        for (Map.Entry<ActionRegistry.Entry, Histogram> e : actions.entrySet()) {
+            sb.append(sep).append("    \"").append(e.getKey().name).append('/').append(e.getKey().arity).append("\": ");
+            json(sb, e.getValue());
+            sep = ",\n";
+        }
+        sb.append("\n  },\n");
+        sb.append("  \"astar_expanded\": ");
+        json(sb, expansions);
+        sb.append(",\n  \"path_length\": ");
+        json(sb, pathLength);
+        sb.append(",\n  \"path_unreachable\": ").append(unreachable.sum());
+        sb.append(",\n  \"percepts_per_update\": ");
+        json(sb, percepts);
+        sb.append(",\n  \"episode_steps\": ");
+        json(sb, episodeSteps);
+        sb.append(",\n  \"episode_utility\": {\"count\": ").append(episodeSteps.count())
+          .append(", \"sum\": ").append(utilitySum.sum())
+          .append(", \"mean\": ").append(meanUtility()).append("}\n}\n");
+        return sb.toString();
+    }
+
+    private static void json(StringBuilder sb, Histogram h) {
+        sb.append("{\"count\": ").append(h.count())
+          .append(", \"sum\": ").append(h.sum())
+          .append(", \"mean\": ").append(h.mean())
+          .append(", \"p50\": ").append(h.quantile(0.5))
+          .append(", \"p90\": ").append(h.quantile(0.9))
+          .append(", \"p99\": ").append(h.quantile(0.99))
+          .append(", \"max\": ").append(h.max()).append('}');
+    }
+}
@@ -0,0 +1,114 @@
+package env;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Runs headless episodes on a fork-join pool.
+//Every episode runs on a freshly reset standalone GridModel (one per worker thread) with a SplittableRandom split from the master seed in
+//episode order, and results are handed to the sink in episode order, so a run is bit-identical to a
+//sequential run with the same seed whatever the thread count. With a Shuffler every episode gets its own
+//object placement, a function of the seed and the episode number only.
+
+final class EpisodeRunner {
+
+    // one episode on a freshly reset model
+    interface Episode {
+        double run(GridEnv.GridModel model, SplittableRandom rng);
+    }
+
+    // receives returns in episode order (1-based episode numbers)
+    interface Sink {
+        void accept(int episode, double episodeReturn);
+    }
+
+    // episodes in flight at once; bounds memory for very long sweeps
+    private static final int CHUNK = 4096;
+
+    private final int threads;
+    private final ThreadLocal<GridEnv.GridModel> models;
+    private final LayoutGenerator.Shuffler shuffler; // null: every episode on the same layout
+    private final int pool;
+    private long layoutSeed;
+
+    EpisodeRunner(int threads) {
+        this(threads, Layout.pdf());
+    }
+
+    EpisodeRunner(int threads, Layout layout) {
+        this(threads, layout, null, 0);
+    }
+
+    // shuffler/pool as in LayoutGenerator.Shuffler.forEpisode
+    EpisodeRunner(int threads, Layout layout, LayoutGenerator.Shuffler shuffler, int pool) {
+        this.threads = Math.max(1, threads);
+        this.models = ThreadLocal.withInitial(() -> new GridEnv.GridModel(layout));
+        this.shuffler = shuffler;
+        this.pool = pool;
+    }
+
+    void run(int episodes, long seed, Episode episode, Sink sink) {
+        SplittableRandom master = new SplittableRandom(seed);
+        layoutSeed = seed;
+        int chunk = Math.min(CHUNK, Math.max(1, episodes));
+        SplittableRandom[] rngs = new SplittableRandom[chunk];
+        double[] returns = new double[chunk];
+
+        ForkJoinPool pool = threads == 1 ? null : new ForkJoinPool(threads);
+        try {
+            for (int first = 0; first < episodes; first += chunk) {
+                int n = Math.min(chunk, episodes - first);
+                for (int i = 0; i < n; i++) rngs[i] = master.split();
+
+                if (pool == null) {
+                    for (int i = 0; i < n; i++) returns[i] = runOne(episode, rngs[i], first + i);
+                } else {
+                    pool.invoke(new Batch(this, episode, rngs, returns, first, 0, n));
+                }
+
+                for (int i = 0; i < n; i++) sink.accept(first + i + 1, returns[i]);
+            }
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    private double runOne(Episode episode, SplittableRandom rng, int k) {
+        GridEnv.GridModel model = models.get();
+        if (shuffler == null) model.resetToLayout();
+        else model.resetToLayout(shuffler.forEpisode(layoutSeed, k, pool));
+        return episode.run(model, rng);
+    }
+
+    private static final class Batch extends RecursiveAction {
+        private static final int LEAF = 16;
+
+        private final EpisodeRunner runner;
+        private final Episode episode;
+        private final SplittableRandom[] rngs;
+        private final double[] returns;
+        private final int first; // episode number of index 0
+        private final int from, to;
+
+        Batch(EpisodeRunner runner, Episode episode, SplittableRandom[] rngs, double[] returns, int first, int from, int to) {
+            this.runner = runner;
+            this.episode = episode;
+            this.rngs = rngs;
+            this.returns = returns;
+            this.first = first;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF) {
+                for (int i = from; i < to; i++) returns[i] = runner.runOne(episode, rngs[i], first + i);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Batch(runner, episode, rngs, returns, first, from, mid),
+                      new Batch(runner, episode, rngs, returns, first, mid, to));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package env;
+
+import java.util.Arrays;
+
+//Constant-memory summary of a stream of episode returns: count, plain sum, Welford mean/variance,
+//min/max and P² estimates of the median, p90 and p99 (Jain & Chlamtac, five markers per quantile).
+//Not thread-safe; EpisodeRunner hands results to the sink on one thread, in episode order.
+
+final class EpisodeStats {
+
+    private long n;
+    private double sum;
+    private double mean, m2;
+    private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+    private final P2 p50 = new P2(0.5), p90 = new P2(0.9), p99 = new P2(0.99);
+
+    void add(double x) {
+        n++;
+        sum += x;
+        double d = x - mean;
+        mean += d / n;
+        m2 += d * (x - mean);
+        if (x < min) min = x;
+        if (x > max) max = x;
+        p50.add(x);
+        p90.add(x);
+        p99.add(x);
+    }
+
+    long count()      { return n; }
+    double sum()      { return sum; }
+    double mean()     { return mean; }
+    double variance() { return n > 1 ? m2 / (n - 1) : 0.0; }
+    double stddev()   { return Math.sqrt(variance()); }
+    double min()      { return n == 0 ? Double.NaN : min; }
+    double max()      { return n == 0 ? Double.NaN : max; }
+    double p50()      { return p50.value(); }
+    double p90()      { return p90.value(); }
+    double p99()      { return p99.value(); }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.4f sd=%.4f min=%.4f p50=%.4f p90=%.4f p99=%.4f max=%.4f",
+                n, mean, stddev(), min(), p50(), p90(), p99(), max());
+    }
+
+    // P² estimator of one quantile: marker heights q, positions pos, desired positions want
+    private static final class P2 {
+        private final double p;
+        private final double[] q = new double[5];
+        private final double[] pos = {1, 2, 3, 4, 5};
+        private final double[] want;
+        private final double[] step;
+        private int seen;
+
+        P2(double p) {
+            this.p = p;
+            this.want = new double[] {1, 1 + 2 * p, 1 + 4 * p, 3 + 2 * p, 5};
+            this.step = new double[] {0, p / 2, p, (1 + p) / 2, 1};
+        }
+
+        void add(double x) {
+            if (seen < 5) {
+                q[seen++] = x;
+                if (seen == 5) Arrays.sort(q);
+                return;
+            }
+            seen++;
+            int k;
+            if (x < q[0]) {
+                q[0] = x;
+                k = 0;
+            } else if (x >= q[4]) {
+                q[4] = x;
+                k = 3;
+            } else {
+                k = 0;
+                while (x >= q[k + 1]) k++;
+            }
+            for (int i = k + 1; i < 5; i++) pos[i]++;
+            for (int i = 0; i < 5; i++) want[i] += step[i];
+
+            for (int i = 1; i <= 3; i++) {
+                double d = want[i] - pos[i];
+                if ((d >= 1 && pos[i + 1] - pos[i] > 1) || (d <= -1 && pos[i - 1] - pos[i] < -1)) {
+                    int s = d >= 0 ? 1 : -1;
+                    double h = parabolic(i, s);
+                    q[i] = q[i - 1] < h && h < q[i + 1] ? h : linear(i, s);
+                    pos[i] += s;
+                }
+            }
+        }
+
+        private double parabolic(int i, int s) {
+            return q[i] + s / (pos[i + 1] - pos[i - 1])
+                    * ((pos[i] - pos[i - 1] + s) * (q[i + 1] - q[i]) / (pos[i + 1] - pos[i])
+                     + (pos[i + 1] - pos[i] - s) * (q[i] - q[i - 1]) / (pos[i] - pos[i - 1]));
+        }
+
+        private double linear(int i, int s) {
+            return q[i] + s * (q[i + s] - q[i]) / (pos[i + s] - pos[i]);
+        }
+
+        // exact (nearest rank) while fewer than five values have been seen
+        double value() {
+            if (seen == 0) return Double.NaN;
+            if (seen < 5) {
+                double[] a = Arrays.copyOf(q, seen);
+                Arrays.sort(a);
+                return a[Math.max(0, (int) Math.ceil(p * seen) - 1)];
+            }
+            return q[2];
+        }
+    }
+}
@@ -1,30 +1,88 @@
 package env;
-import java.util.Random;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
 import jason.environment.grid.Location;
 public class Experiment{
     private static final int NUM_EPISODES =100;
     private static final int MAX_STEPS =100; // still thinking about this to not have an infinity loop if agent stupid
-    private static final Random rng = new Random();
-    public static void main(String[] args) {
-        double totalReward =0.0;
-        
-        for (int ep=1; ep<=NUM_EPISODES; ep++){
-            GridEnv env = new GridEnv();
-            GridEnv.GridModel model = env.new GridModel();
 
-            model.resetToPdfLayout();
-            double episodeReturn = runSingleEpisode(model);
-            System.out.println("Episode "+ep+ " return = " +episodeReturn);
-            totalReward += episodeReturn;
+    // usage: Experiment [--episodes N] [--threads T] [--seed S] [--layout pdf|random:WxH:density:seed|file]
+    //                   [--out results.csv|results.bin] [--progress SECONDS] [--quiet]
+    //                   [--randomize none|fixed|all|SYMBOLS] [--layout-pool N]
+    // Nothing is printed per episode: returns stream to --out, a summary is printed every --progress
+    // seconds (default 5, 0 = off; --quiet also turns it off) and at the end.
+    // --randomize re-places objects every episode (fixed = table, chair, door), drawn from the seed;
+    // --layout-pool N cycles through N such layouts (default 0 = a new one every episode).
+    public static void main(String[] args) throws IOException {
+        int episodes = NUM_EPISODES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        boolean quiet = false;
+        Layout layout = Layout.pdf();
+        Path out = null;
+        double progress = 5.0;
+        int randomize = 0, pool = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--episodes": episodes = Integer.parseInt(args[++i]); break;
+                case "--threads":  threads  = Integer.parseInt(args[++i]); break;
+                case "--seed":     seed     = Long.parseLong(args[++i]);   break;
+                case "--layout":   layout   = Layout.fromSpec(args[++i]);  break;
+                case "--out":      out      = Paths.get(args[++i]);        break;
+                case "--progress": progress = Double.parseDouble(args[++i]); break;
+                case "--quiet":    quiet    = true;                        break;
+                case "--randomize":   randomize = LayoutGenerator.objectMask(args[++i]); break;
+                case "--layout-pool": pool      = Integer.parseInt(args[++i]);           break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
         }
-        double averageReturn = totalReward/NUM_EPISODES;
-        System.out.println("Average utility over "+ NUM_EPISODES+ "episodes = "+averageReturn);
+
+        System.out.println("Running " + episodes + " episodes on " + threads + " threads, seed = " + seed + ", " + layout);
+
+        EpisodeStats stats = new EpisodeStats();
+        long t0 = System.nanoTime();
+        boolean report = !quiet && progress > 0;
+        long every = (long) (progress * 1e9);
+        long[] nextReport = {t0 + every};
+        int total = episodes;
+        try (ResultsWriter results = out == null ? null : ResultsWriter.open(out, seed)) {
+            LayoutGenerator.Shuffler shuffler = randomize == 0 ? null : new LayoutGenerator.Shuffler(layout, randomize);
+            new EpisodeRunner(threads, layout, shuffler, pool).run(episodes, seed, Experiment::runSingleEpisode, (ep, episodeReturn) -> {
+                stats.add(episodeReturn);
+                if (results != null) {
+                    try {
+                        results.write(ep, episodeReturn);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                // the clock is only read every 1024 episodes
+                if (report && (ep & 1023) == 0 && System.nanoTime() >= nextReport[0]) {
+                    long now = System.nanoTime();
+                    System.out.printf("[%d/%d] %.0f episodes/s  %s%n", ep, total, ep / ((now - t0) / 1e9), stats);
+                    nextReport[0] = now + every;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        double averageReturn = stats.sum() / episodes;
+        System.out.println("Average utility over "+ episodes+ " episodes = "+averageReturn);
+        System.out.println("Returns: " + stats);
+        if (out != null) System.out.println("Results written to " + out);
+        double secs = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%.3f s, %.1f episodes/s%n", secs, episodes / secs);
 
     }
 
-    private static double runSingleEpisode(GridEnv.GridModel model){
+    static double runSingleEpisode(GridEnv.GridModel model, SplittableRandom rng){
         double episodeReturn =0.0;
-        for (int step=1; ; step++){
+        for (int step=1; step<=MAX_STEPS; step++){
             if (model.doorOpen && model.chairColored && model.tableColored){
                 episodeReturn +=1.0;
                 episodeReturn +=1.0;
@@ -1,14 +1,33 @@
 package env;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+import jason.architecture.AgArch;
+import jason.asSemantics.TransitionSystem;
 import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Atom;
+import jason.asSyntax.ListTerm;
+import jason.asSyntax.Literal;
 import jason.asSyntax.NumberTerm;
 import jason.asSyntax.Structure;
+import jason.asSyntax.Term;
 import jason.environment.Environment;
 import jason.environment.grid.GridWorldModel;
 import jason.environment.grid.Location;
+import jason.infra.local.LocalAgArch;
+import jason.infra.local.LocalEnvironment;
 
 public class GridEnv extends Environment {
 
@@ -26,239 +45,558 @@ public class GridEnv extends Environment {
     public static final int COLOR = 1 << 13;  // Cl
     public static final int TABLE = 1 << 6;   // T
 
-    // so .plan_path can access the current model
-    public static GridModel CURRENT_MODEL;
+    // Rewards. SimKernel, QLearning, MissionPlanner and TraceReplayer compute theirs from these too, so
+    // all of them stay bit for bit equal to what the agents perceive.
+    static final double REWARD_NOOP   = -0.01; // noop, reset, next_episode
+    static final double REWARD_OK     = -0.02; // a move, pick or drop that succeeded
+    static final double REWARD_FAILED = -0.03; // any action that failed, unknown actions
+    static final double REWARD_PAINT  = 1.0;
+    static final double REWARD_OPEN   = 0.8;
+    static final double CARRY_NOTHING = -0.01, CARRY_PER_ITEM = -0.02;
+
+    // carrying penalty added after every step (macro steps included) for the number of items carried
+    static double rewardForCarrying(int carried) {
+        return carried == 0 ? CARRY_NOTHING : carried * CARRY_PER_ITEM;
+    }
 
     private GridModel model;
     private GridView view;
     public static final String AG_NAME = "main_agent";
 
     // ===== Experiment bookkeeping (for GUI + optional agent control) =====
+    // guarded by control; reset/next_episode/startExperiment may come from any agent or the view
+    private final Object control = new Object();
     private boolean experimentMode = false;
     private int episode = 0;
-    private int stepCounter = 0;
-    private double totalUtility = 0.0;
+    private EpisodeStats utilities = new EpisodeStats();
+    private Path resultsFile;      // results=<file>.csv|.bin streams each experiment's episode utilities
+    private ResultsWriter results;
+    private TraceRecorder trace;   // trace=<file> records every executed step, null without it
     private int maxEpisodes = 100;
+    private final LongAdder experimentSteps = new LongAdder();
+    private long experimentStart = System.nanoTime();
+
+    // per-episode object placement (randomize=fixed|all|<symbols>, randomize.seed=S, randomize.pool=N);
+    // null keeps the init layout. Layout k of a run depends only on the seed and k (mod the pool size).
+    private LayoutGenerator.Shuffler shuffler;
+    private long layoutSeed;
+    private int layoutPool;
+    private int layoutCount; // layouts dealt so far, guarded by control
+
+    // ===== Agents =====
+    // Per-agent state. An agent's actions run under its own monitor (actions of different agents run
+    // in parallel and only meet on the model's region locks); lock order is agent -> model regions.
+    static final class AgentState {
+        final int id;
+        final String name;
+        int steps = 0;
+        Literal lastReward;
+
+        // percept publishing
+        Set<Literal> last;                    // dynamic percepts sent last time (delta mode)
+        Set<Literal> spare = new HashSet<>();
+        final List<Literal> dynamicBuf = new ArrayList<>();
+        final List<Literal> staticBuf = new ArrayList<>();
+        long staticVersion = -1;              // layout the static percepts were published for
+        long worldSeen = -1;                  // model.worldVersion at the last update
+        int gotoMove;                         // what the last move(X,Y) did, as a TraceRecorder MOVE arg
+
+        AgentState(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private AgentState[] agents;
+
+    // ===== Percept publishing =====
+    // delta mode only sends what changed since the last update (percepts=delta init arg)
+    private boolean deltaPercepts = false;
+    // vision=R init arg: objects are only perceived within Manhattan radius R of the agent, -1 = everywhere
+    private int vision = -1;
+    private LiteralPool literals;
+
+    // ===== Action dispatch =====
+    private ActionRegistry actions;
+    private EnvMetrics metrics; // null unless the metrics init arg is set
+    private final ActionRegistry.Entry unknownAction =
+            new ActionRegistry.Entry("unknown", 0, ActionRegistry.Kind.STEP, (env, ag, a) -> REWARD_FAILED);
 
     @Override
     public void init(String[] args) {
+        long t0 = System.nanoTime();
         super.init(args);
-        model = new GridModel();
-        CURRENT_MODEL = model;
-
-        model.resetToPdfLayout();
-
-        view = new GridView(model);
-        view.setEnvHooks(
-                () -> startExperiment(100),
-                () -> resetEpisode(),
-                () -> startExperiment(1)
-        );
+        initModel(args);
+
+        // headless=true|false|auto (auto: no view when the JVM runs with java.awt.headless), fps=N caps the
+        // view's render rate; without a view the experiment controls are the public startExperiment/resetEpisode/runOneEpisode
+        String headless = initArg(args, "headless", "auto");
+        boolean noView = headless.equalsIgnoreCase("auto")
+                ? Boolean.getBoolean("java.awt.headless")
+                : Boolean.parseBoolean(headless);
+        if (!noView) {
+            view = new GridView(model, Integer.parseInt(initArg(args, "fps", String.valueOf(GridView.DEFAULT_FPS))));
+            view.setEnvHooks(
+                    () -> startExperiment(100),
+                    () -> resetEpisode(),
+                    () -> startExperiment(1)
+            );
+        }
 
         updatePercepts();
         if (view != null) view.updateFromModel(model);
         informAgsEnvironmentChanged();
+
+        System.out.printf("GridEnv started %s with %d agent(s) in %.1f ms%n",
+                view == null ? "headless" : "with view", agents.length, (System.nanoTime() - t0) / 1e6);
     }
 
-    @Override
-    public boolean executeAction(String agName, Structure action) {
+    public boolean isHeadless() { return view == null; }
+
+    // model of the GridEnv the agent of ts acts in (for internal actions), null outside a GridEnv; found
+    // through the agent's architecture chain, so several environments can share one JVM (MasBatch)
+    static GridModel modelOf(TransitionSystem ts) {
+        for (AgArch a = ts.getAgArch(); a != null; a = a.getNextAgArch()) {
+            Environment e = null;
+            if (a instanceof MasBatch.Arch) {
+                e = ((MasBatch.Arch) a).env();
+            } else if (a instanceof LocalAgArch) {
+                LocalEnvironment infra = ((LocalAgArch) a).getEnvInfraTier();
+                if (infra != null) e = infra.getUserEnvironment();
+            }
+            if (e instanceof GridEnv) return ((GridEnv) e).model;
+        }
+        return null;
+    }
+
+    // model, percept and pathfinding setup from the init args, without any view
+    // (also used directly by the JMH benchmarks)
+    void initModel(String[] args) {
+        String[] names = agentNames(initArg(args, "agents", AG_NAME));
         try {
-            String fun = action.getFunctor();
-            double reward = 0.0;
+            model = new GridModel(Layout.fromSpec(initArg(args, "layout", "pdf")),
+                    GridModel.Storage.parse(initArg(args, "storage", System.getProperty("gridmodel.storage"))),
+                    names.length);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("cannot load layout", e);
+        }
+        model.nameAgents(names);
+        model.pathEngine = PathFinding.Engine.parse(
+                initArg(args, "pathfinding", PathFinding.getDefaultEngine().name()));
+        deltaPercepts = initArg(args, "percepts", "full").equalsIgnoreCase("delta");
+        vision = Integer.parseInt(initArg(args, "vision", "-1"));
+        literals = new LiteralPool(model);
+        agents = new AgentState[names.length];
+        for (int i = 0; i < names.length; i++) agents[i] = new AgentState(i, names[i]);
+        registerActions(args);
+        metrics = EnvMetrics.fromArgs(args);
+        model.metrics = metrics;
+        String rf = initArg(args, "results", "");
+        resultsFile = rf.isEmpty() ? null : Paths.get(rf);
+
+        int shuffled = LayoutGenerator.objectMask(initArg(args, "randomize", "none"));
+        shuffler = shuffled == 0 ? null : new LayoutGenerator.Shuffler(model.layout(), shuffled);
+        layoutSeed = Long.parseLong(initArg(args, "randomize.seed", "0"));
+        layoutPool = Integer.parseInt(initArg(args, "randomize.pool", "0"));
+        model.resetToLayout(nextLayout());
+
+        String tf = initArg(args, "trace", "");
+        if (!tf.isEmpty()) {
+            try {
+                trace = TraceRecorder.open(Paths.get(tf), model);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("cannot open trace " + tf, e);
+            }
+            trace.episodeStart(model);
+        }
+    }
 
-            // count steps only when we actually execute something meaningful
-            boolean countedStep = false;
+    // the init layout, or the next randomized one
+    private Layout nextLayout() {
+        if (shuffler == null) return model.layout();
+        return shuffler.forEpisode(layoutSeed, layoutCount++, layoutPool);
+    }
 
-            // -------- aliases to match your ASL --------
-            // grab(X) == pick(X)
-            if (fun.equals("grab")) fun = "pick";
-            // put(X)  == drop(X)
-            if (fun.equals("put"))  fun = "drop";
+    // agents=a,b,c or agents=name#N (name1..nameN, the names Jason gives to "name #N" in the mas2j)
+    static String[] agentNames(String spec) {
+        String s = spec.trim();
+        int hash = s.indexOf('#');
+        if (hash > 0) {
+            String base = s.substring(0, hash).trim();
+            int n = Integer.parseInt(s.substring(hash + 1).trim());
+            if (n == 1) return new String[] { base };
+            String[] names = new String[n];
+            for (int i = 0; i < n; i++) names[i] = base + (i + 1);
+            return names;
+        }
+        String[] names = s.split(",");
+        for (int i = 0; i < names.length; i++) names[i] = names[i].trim();
+        return names;
+    }
 
-            if (fun.equals("noop")) {
-                reward = -0.01;
-                countedStep = true;
+    @Override
+    public void stop() {
+        if (metrics != null) metrics.close();
+        synchronized (control) {
+            closeResults();
+            if (trace != null) {
+                try {
+                    trace.close();
+                } catch (IOException e) {
+                    System.err.println("trace: " + e);
+                }
             }
+        }
+        super.stop();
+    }
 
-            // move(dir)
-            else if (fun.equals("move") && action.getArity() == 1) {
-                String dir = stripQuotes(action.getTerm(0).toString());
-
-                Location a = model.getAgPos(0);
-                int nx = a.x, ny = a.y;
+    public GridModel model() { return model; }
+
+    // An agent missing from the agents= init arg would silently get no percepts and have every action
+    // refused, so an unknown name fails loudly, naming the list the mas2j has to match.
+    private AgentState agent(String agName) {
+        int id = model.agentId(agName);
+        if (id < 0) {
+            StringBuilder known = new StringBuilder();
+            for (AgentState st : agents) known.append(known.length() == 0 ? "" : ",").append(st.name);
+            throw new IllegalArgumentException("unknown agent " + agName + ": the environment has agents="
+                    + known + ", which must list the same names as the mas2j agents: section");
+        }
+        return agents[id];
+    }
 
-                if (dir.equalsIgnoreCase("up"))         ny -= 1;   // internal coords
-                else if (dir.equalsIgnoreCase("down"))  ny += 1;
-                else if (dir.equalsIgnoreCase("left"))  nx -= 1;
-                else if (dir.equalsIgnoreCase("right")) nx += 1;
-                else reward = -0.03;
+    @Override
+    public Collection<Literal> getPercepts(String agName) {
+        agent(agName); // fails on names missing from agents=
+        return super.getPercepts(agName);
+    }
 
-                if (reward == 0.0) {
-                    if (model.canMoveAgentTo(nx, ny)) {
-                        model.setAgPos(0, nx, ny);
-                        reward = -0.02;
-                    } else reward = -0.03;
-                }
-                countedStep = true;
+    @Override
+    public boolean executeAction(String agName, Structure action) {
+        long t0 = metrics != null ? System.nanoTime() : 0L;
+        AgentState st = agent(agName);
+        try {
+            // do(A) == A (the ASL wraps its actions in do/1); a bare atom such as do(noop) is not a
+            // Structure in Jason, so it becomes the arity-0 action of that name
+            if (action.getFunctor().equals("do") && action.getArity() == 1) {
+                Term t = action.getTerm(0);
+                if (t instanceof Structure) action = (Structure) t;
+                else if (t instanceof Atom) action = ASSyntax.createStructure(((Atom) t).getFunctor());
             }
 
-            // move(X,Y) : PDF coords -> take one A* step towards it
-            else if (fun.equals("move") && action.getArity() == 2) {
-                int X = (int)((NumberTerm)action.getTerm(0)).solve(); // PDF coords
-                int Y = (int)((NumberTerm)action.getTerm(1)).solve();
+            ActionRegistry.Entry handler = actions.lookup(action.getFunctor(), action.getArity());
+            if (handler == null) handler = unknownAction;
 
-                int gx = model.ix(X);
-                int gy = model.iy(Y);
+            // episode controls touch every agent, so they run outside this agent's lock
+            double reward = handler.kind == ActionRegistry.Kind.CONTROL ? handler.execute(this, st.id, action) : 0.0;
+            long world = model.worldVersion.get();
 
-                Location start = model.getAgPos(0);
-                boolean[][] blocked = model.blockedGrid();
+            synchronized (st) {
+                if (handler.kind != ActionRegistry.Kind.CONTROL) reward = handler.execute(this, st.id, action);
 
-                if (blocked[gy][gx]) {
-                    reward = -0.03;
-                } else {
-                    List<PathFinding.Cell> path = PathFinding.findPath(start.x, start.y, gx, gy, blocked);
-                    if (!path.isEmpty()) {
-                        if (path.size() >= 2) {
-                            PathFinding.Cell next = path.get(1);
-                            model.setAgPos(0, next.x, next.y);
-                        }
-                        reward = -0.02;
-                    } else reward = -0.03;
+                // state reward
+                if (handler.kind != ActionRegistry.Kind.MACRO) reward += model.carryingReward(st.id);
+
+                // count steps only when we actually execute something meaningful
+                if (handler.kind == ActionRegistry.Kind.STEP) {
+                    st.steps++;
+                    experimentSteps.increment();
+                    if (trace != null) traceStep(st, handler, action, reward);
                 }
-                countedStep = true;
+                st.lastReward = literals.reward(reward);
+                updatePercepts(st, st.lastReward);
             }
+            // objects or flags changed: the others see them now, not at their next action
+            if (agents.length > 1 && model.worldVersion.get() != world) refreshOthers(st);
 
-            // pick(X)
-            else if (fun.equals("pick") && action.getArity() == 1) {
-                String tok = stripQuotes(action.getTerm(0).toString());
-                boolean ok = model.pickAtAgent(tok);
-                reward = ok ? -0.02 : -0.03;
-                countedStep = true;
-            }
+            if (view != null) view.updateFromModel(model);
 
-            // drop(X)
-            else if (fun.equals("drop") && action.getArity() == 1) {
-                String tok = stripQuotes(action.getTerm(0).toString());
-                boolean ok = model.dropAtAgent(tok);
-                reward = ok ? -0.02 : -0.03;
-                countedStep = true;
-            }
+            informAgsEnvironmentChanged();
+            if (metrics != null) metrics.action(handler, System.nanoTime() - t0);
 
-            // paint(X)
-            else if (fun.equals("paint") && action.getArity() == 1) {
-                String target = stripQuotes(action.getTerm(0).toString());
-                boolean ok = model.paintTarget(target);
-                reward = ok ? 1.0 : -0.03;
-                countedStep = true;
-            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
 
-            // open(door)
-            else if (fun.equals("open") && action.getArity() == 1) {
-                String tok = stripQuotes(action.getTerm(0).toString());
-                boolean ok = (tok.equalsIgnoreCase("D") || tok.equalsIgnoreCase("door")) && model.openDoor();
-                reward = ok ? 0.8 : -0.03;
-                countedStep = true;
-            }
+    // the trace record of a STEP action (macro actions record their steps in macroStep)
+    private void traceStep(AgentState st, ActionRegistry.Entry h, Structure action, double reward) {
+        byte op = TraceRecorder.OTHER, via = TraceRecorder.DIRECT;
+        int arg;
+        switch (h.name) {
+            case "noop":  op = TraceRecorder.NOOP; arg = 0; break;
+            case "move":
+                op = TraceRecorder.MOVE;
+                if (h.arity == 1) {
+                    arg = LiteralPool.direction(action.getTerm(0));
+                } else {
+                    via = TraceRecorder.GOTO;
+                    arg = st.gotoMove;
+                }
+                break;
+            case "pick":  op = TraceRecorder.PICK;  arg = LiteralPool.objectMask(action.getTerm(0)); break;
+            case "drop":  op = TraceRecorder.DROP;  arg = LiteralPool.objectMask(action.getTerm(0)); break;
+            case "paint": op = TraceRecorder.PAINT; arg = LiteralPool.objectMask(action.getTerm(0)); break;
+            case "open":  op = TraceRecorder.OPEN;  arg = LiteralPool.objectMask(action.getTerm(0)); break;
+            default:      arg = h.name.hashCode();
+        }
+        trace.step(model, st.id, st.steps, op, via, arg, reward);
+    }
 
-            // reset
-            else if (fun.equals("reset") && action.getArity() == 0) {
-                resetEpisode();
-                reward = -0.01;
+    private void refreshOthers(AgentState self) {
+        for (AgentState o : agents) {
+            if (o == self) continue;
+            synchronized (o) {
+                if (o.worldSeen != model.worldVersion.get()) updatePercepts(o, o.lastReward);
             }
+        }
+    }
 
-            // next_episode (optional if you want your agent to run many episodes)
-            else if (fun.equals("next_episode") && action.getArity() == 0) {
-                finishEpisodeAndMaybeContinue();
-                reward = -0.01;
-            }
+    // ===================== Actions =====================
+
+    private void registerActions(String[] args) {
+        actions = new ActionRegistry();
+        actions.register("noop", 0, ActionRegistry.Kind.STEP, (env, ag, a) -> REWARD_NOOP);
+        actions.register("move", 1, ActionRegistry.Kind.STEP, (env, ag, a) -> moveDirection(ag, a));
+        actions.register("move", 2, ActionRegistry.Kind.STEP, (env, ag, a) -> moveTowards(ag, a));
+        actions.register("follow", 1, ActionRegistry.Kind.MACRO, (env, ag, a) -> follow(ag, a));
+        actions.register("move_to", 2, ActionRegistry.Kind.MACRO, (env, ag, a) -> moveTo(ag, a));
+        actions.register("pick", 1, ActionRegistry.Kind.STEP,
+                (env, ag, a) -> model.pickAtAgent(ag, LiteralPool.objectMask(a.getTerm(0))) ? REWARD_OK : REWARD_FAILED);
+        actions.register("drop", 1, ActionRegistry.Kind.STEP,
+                (env, ag, a) -> model.dropAtAgent(ag, LiteralPool.objectMask(a.getTerm(0))) ? REWARD_OK : REWARD_FAILED);
+        actions.register("paint", 1, ActionRegistry.Kind.STEP,
+                (env, ag, a) -> model.paintTarget(ag, LiteralPool.objectMask(a.getTerm(0))) ? REWARD_PAINT : REWARD_FAILED);
+        actions.register("open", 1, ActionRegistry.Kind.STEP,
+                (env, ag, a) -> LiteralPool.objectMask(a.getTerm(0)) == DOOR && model.openDoor(ag) ? REWARD_OPEN : REWARD_FAILED);
+        actions.register("reset", 0, ActionRegistry.Kind.CONTROL, (env, ag, a) -> {
+            resetEpisode();
+            return REWARD_NOOP;
+        });
+        // next_episode (optional if you want your agent to run many episodes)
+        actions.register("next_episode", 0, ActionRegistry.Kind.CONTROL, (env, ag, a) -> {
+            finishEpisodeAndMaybeContinue();
+            return REWARD_NOOP;
+        });
+
+        // aliases to match your ASL: grab(X) == pick(X), put(X) == drop(X)
+        actions.alias("grab", "pick", 1);
+        actions.alias("put", "drop", 1);
+
+        actions.registerFromArgs(args);
+    }
 
-            else {
-                reward = -0.03;
-                countedStep = true;
-            }
+    // move(dir)
+    private double moveDirection(int ag, Structure action) {
+        int dir = LiteralPool.direction(action.getTerm(0));
+        if (dir < 0) return REWARD_FAILED;
 
-            // state reward
-            reward += model.carryingReward();
+        Location a = model.getAgPos(ag);
+        int nx = a.x + LiteralPool.DX[dir];   // internal coords
+        int ny = a.y + LiteralPool.DY[dir];
+        return model.moveAgent(ag, nx, ny) ? REWARD_OK : REWARD_FAILED;
+    }
 
-            if (countedStep) stepCounter++;
-            updatePercepts();
-            addPercept(AG_NAME,ASSyntax.createLiteral("reward(" + reward + ")"));
-            
-            if (view != null) view.updateFromModel(model);
+    // move(X,Y) : PDF coords -> take one A* step towards it (path is cached between steps)
+    private double moveTowards(int ag, Structure action) throws Exception {
+        AgentState st = agents[ag];
+        st.gotoMove = TraceRecorder.FAILED;
+        int gx = model.ix((int)((NumberTerm)action.getTerm(0)).solve()); // PDF coords
+        int gy = model.iy((int)((NumberTerm)action.getTerm(1)).solve());
+        if (!model.canMoveAgentTo(gx, gy)) return REWARD_FAILED;
+
+        Location start = model.getAgPos(ag);
+        int[] path = model.findPath(ag, start.x, start.y, gx, gy);
+        if (path.length == 0) return REWARD_FAILED;
+        st.gotoMove = TraceRecorder.STAY;
+        if (path.length >= 2) {
+            int next = path[1];
+            st.gotoMove = direction(start.y * model.getWidth() + start.x, next);
+            if (!model.moveAgent(ag, next % model.getWidth(), next / model.getWidth())) return REWARD_FAILED;
+        }
+        return REWARD_OK;
+    }
 
-            informAgsEnvironmentChanged();
+    // LiteralPool direction index of a step between adjacent cells
+    private int direction(int from, int to) {
+        int w = model.getWidth();
+        int dx = to % w - from % w, dy = to / w - from / w;
+        for (int d = 0; d < 4; d++) {
+            if (LiteralPool.DX[d] == dx && LiteralPool.DY[d] == dy) return d;
+        }
+        return TraceRecorder.FAILED;
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    // follow([Dir,...]) : a whole .plan_path result in one call, stops at the first failing move
+    private double follow(int ag, Structure action) {
+        if (!action.getTerm(0).isList()) return macroStep(ag, TraceRecorder.FOLLOW, TraceRecorder.FAILED, false);
+        double reward = 0.0;
+        for (Term t : (ListTerm) action.getTerm(0)) {
+            int dir = LiteralPool.direction(t);
+            Location a = model.getAgPos(ag);
+            boolean ok = dir >= 0 && model.moveAgent(ag, a.x + LiteralPool.DX[dir], a.y + LiteralPool.DY[dir]);
+            reward += macroStep(ag, TraceRecorder.FOLLOW, dir, ok);
+            if (!ok) break;
         }
-        return true;
+        return reward;
+    }
+
+    // move_to(X,Y) : PDF coords -> all the A* steps of move(X,Y) in one call
+    private double moveTo(int ag, Structure action) throws Exception {
+        int gx = model.ix((int)((NumberTerm)action.getTerm(0)).solve());
+        int gy = model.iy((int)((NumberTerm)action.getTerm(1)).solve());
+        Location start = model.getAgPos(ag);
+        int[] path = model.canMoveAgentTo(gx, gy) ? model.findPath(ag, start.x, start.y, gx, gy) : PathFinding.NO_PATH;
+        if (path.length == 0) return macroStep(ag, TraceRecorder.MOVE_TO, TraceRecorder.FAILED, false);
+
+        double reward = 0.0;
+        int w = model.getWidth();
+        for (int i = 1; i < path.length; i++) {
+            boolean ok = model.moveAgent(ag, path[i] % w, path[i] / w);
+            reward += macroStep(ag, TraceRecorder.MOVE_TO, direction(path[i - 1], path[i]), ok);
+            if (!ok) break;
+        }
+        return reward;
+    }
+
+    // one step of a macro action, rewarded and counted like the single move(...) it stands for;
+    // dir is the direction tried (TraceRecorder.FAILED if none), via the macro, both for the trace
+    private double macroStep(int ag, byte via, int dir, boolean moved) {
+        agents[ag].steps++;
+        experimentSteps.increment();
+        double reward = (moved ? REWARD_OK : REWARD_FAILED) + model.carryingReward(ag);
+        if (trace != null) trace.step(model, ag, agents[ag].steps, TraceRecorder.MOVE, via, dir, reward);
+        return reward;
     }
 
     // ===================== Percepts (PDF coords, matching your ASL) =====================
 
     void updatePercepts() {
-        clearPercepts();
+        for (AgentState st : agents) {
+            synchronized (st) {
+                updatePercepts(st, null);
+            }
+        }
+    }
+
+    // Full mode clears and republishes everything. Delta mode publishes the static layout facts once
+    // per episode (or when walls change) and then only adds/removes dynamic facts that changed.
+    // Called with st's monitor held.
+    void updatePercepts(AgentState st, Literal reward) {
+        st.worldSeen = model.worldVersion.get();
+        List<Literal> dynamic = st.dynamicBuf;
+        dynamic.clear();
+        collectDynamicPercepts(st, dynamic);
+        if (reward != null) dynamic.add(reward);
+
+        if (!deltaPercepts) {
+            clearPercepts(st.name);
+            List<Literal> stat = st.staticBuf;
+            stat.clear();
+            collectStaticPercepts(stat);
+            for (Literal l : stat) addPercept(st.name, l);
+            for (Literal l : dynamic) addPercept(st.name, l);
+            if (metrics != null) metrics.percepts(stat.size() + dynamic.size());
+            return;
+        }
+
+        int sent = 0; // adds + removes, for the metrics
+        if (st.staticVersion != model.layoutVersion) {
+            clearPercepts(st.name);
+            st.last = null;
+            List<Literal> stat = st.staticBuf;
+            stat.clear();
+            collectStaticPercepts(stat);
+            for (Literal l : stat) addPercept(st.name, l);
+            sent += stat.size();
+            st.staticVersion = model.layoutVersion;
+        }
+
+        // swap the previous set of this agent with the scratch set
+        Set<Literal> now = st.spare;
+        now.clear();
+        now.addAll(dynamic);
+        Set<Literal> prev = st.last;
+        if (prev != null) {
+            for (Literal l : prev) {
+                if (!now.contains(l)) {
+                    removePercept(st.name, l);
+                    sent++;
+                }
+            }
+        }
+        for (Literal l : now) {
+            if (prev == null || !prev.contains(l)) {
+                addPercept(st.name, l);
+                sent++;
+            }
+        }
+        st.last = now;
+        st.spare = prev != null ? prev : new HashSet<>();
+        if (metrics != null) metrics.percepts(sent);
+    }
+
+    // facts that only change between episodes: capacity, walls, episode/experiment
+    private void collectStaticPercepts(List<Literal> out) {
+        // capacity percepts (your ASL uses these)
+        out.add(LiteralPool.MAX_CARRY);
 
-        Location p = model.getAgPos(0);
+        // walls
+        int w = model.getWidth();
+        for (int c : model.objectCells(OBST)) {
+            out.add(literals.wall(c % w, c / w));
+        }
+
+        // episode/experiment
+        out.add(literals.episode(episode));
+        if (experimentMode) out.add(LiteralPool.EXPERIMENT_RUNNING);
+    }
+
+    // facts that can change with every action; position, inventory and steps are the agent's own
+    private void collectDynamicPercepts(AgentState st, List<Literal> out) {
+        Location p = model.getAgPos(st.id);
         if (p == null){
             p = new Location(model.ix(1),model.iy(1));
         }
         // pos(X,Y)
-        addPercept(AG_NAME,ASSyntax.createLiteral(
-               "pos(" + model.px(p.x) + "," + model.py(p.y) + ")"
-        ));
+        out.add(literals.pos(p.x, p.y));
 
         // objects: at(Symbol,X,Y)
-        addObjectPerceptIfPresent(BRUSH, "b");
-        addObjectPerceptIfPresent(KEY,   "k");
-        addObjectPerceptIfPresent(CODE,  "cd");
-        addObjectPerceptIfPresent(COLOR, "cl");
-        addObjectPerceptIfPresent(TABLE, "t");
-        addObjectPerceptIfPresent(CHAIR, "ch");
-        addObjectPerceptIfPresent(DOOR,  "d");
+        addObjectPerceptIfPresent(out, BRUSH, p);
+        addObjectPerceptIfPresent(out, KEY, p);
+        addObjectPerceptIfPresent(out, CODE, p);
+        addObjectPerceptIfPresent(out, COLOR, p);
+        addObjectPerceptIfPresent(out, TABLE, p);
+        addObjectPerceptIfPresent(out, CHAIR, p);
+        addObjectPerceptIfPresent(out, DOOR, p);
 
 
         // inventory: provide BOTH has/1 and have/1 so your old plans won’t break
-        if (model.hasBrush) addPercept(AG_NAME, ASSyntax.createLiteral("have(b)"));
-        if (model.hasKey)   addPercept(AG_NAME, ASSyntax.createLiteral("have(k)"));
-        if (model.hasCode)  addPercept(AG_NAME, ASSyntax.createLiteral("have(cd)"));
-        if (model.hasColor) addPercept(AG_NAME, ASSyntax.createLiteral("have(cl)"));
-
+        if (model.carries(st.id, BRUSH)) out.add(literals.have(BRUSH));
+        if (model.carries(st.id, KEY))   out.add(literals.have(KEY));
+        if (model.carries(st.id, CODE))  out.add(literals.have(CODE));
+        if (model.carries(st.id, COLOR)) out.add(literals.have(COLOR));
 
-        // capacity percepts (your ASL uses these)
-        addPercept( AG_NAME,ASSyntax.createLiteral("max_carry(" + GridModel.MAX_CARRY + ")"));
-        addPercept( AG_NAME,ASSyntax.createLiteral("carrying_count(" + model.carriedCount() + ")"));
+        out.add(literals.carryingCount(model.carriedCount(st.id)));
 
         // status
-        if (model.tableColored){
-            addPercept(AG_NAME, ASSyntax.createLiteral("colored(table)"));
-        }
-        if (model.chairColored){
-            addPercept(AG_NAME, ASSyntax.createLiteral("colored(chair)"));
-        }
-        if (model.doorOpen){
-            addPercept(AG_NAME, ASSyntax.createLiteral("door(open)"));
-        }else{
-            addPercept(AG_NAME, ASSyntax.createLiteral("door(closed)"));
-        }
-        // walls
-        for (Location l : model.getOccupiedLocationsWithMask(OBST)) {
-            addPercept(AG_NAME,ASSyntax.createLiteral(
-                    "wall(" + model.px(l.x) + "," + model.py(l.y) + ")"
-            ));
-        }
+        if (model.tableColored) out.add(LiteralPool.COLORED_TABLE);
+        if (model.chairColored) out.add(LiteralPool.COLORED_CHAIR);
+        out.add(model.doorOpen ? LiteralPool.DOOR_OPEN : LiteralPool.DOOR_CLOSED);
 
-        // episode/step/experiment
-        addPercept(AG_NAME, ASSyntax.createLiteral("episode(" + episode + ")"));
-        addPercept(AG_NAME, ASSyntax.createLiteral("step(" + stepCounter + ")"));
-        if (experimentMode) addPercept(AG_NAME,ASSyntax.createLiteral("experiment(running)"));
+        out.add(literals.step(st.steps));
     }
 
-    private void addObjectPerceptIfPresent(int mask, String sym) {
-        for (Location l : model.getOccupiedLocationsWithMask(mask)) {
-            addPercept(AG_NAME, ASSyntax.createLiteral(
-                    "at(" + sym + "," + model.px(l.x) + "," + model.py(l.y) + ")"
-            ));
+    // objects seen from p; with a vision radius this is a range query on the object index
+    private void addObjectPerceptIfPresent(List<Literal> out, int mask, Location p) {
+        int w = model.getWidth();
+        if (vision >= 0) {
+            model.forEachObjectWithin(mask, p.x, p.y, vision, c -> out.add(literals.at(mask, c % w, c / w)));
+            return;
+        }
+        for (int c : model.objectCells(mask)) {
+            out.add(literals.at(mask, c % w, c / w));
         }
     }
 
@@ -266,178 +604,679 @@ public class GridEnv extends Environment {
         return s.replace("\"", "");
     }
 
+    // init args are key=value pairs, e.g. environment: env.GridEnv("pathfinding=jgrapht");
+    // falls back to the system property gridenv.<key>
+    static String initArg(String[] args, String key, String def) {
+        if (args != null) {
+            for (String a : args) {
+                String s = stripQuotes(a).trim();
+                int eq = s.indexOf('=');
+                if (eq > 0 && s.substring(0, eq).trim().equalsIgnoreCase(key)) {
+                    return s.substring(eq + 1).trim();
+                }
+            }
+        }
+        return System.getProperty("gridenv." + key, def);
+    }
+
     // ===================== Experiment controls =====================
-    private void runOneEpisode(){
-        experimentMode = false;
-        resetEpisode();
+    // Same actions as the view's "Run Episode" / "Start Experiment" / "Reset" buttons, for headless runs
+
+    public void runOneEpisode(){
+        synchronized (control) {
+            experimentMode = false;
+            resetEpisode();
+        }
     }
-    private void startExperiment(int episodes) {
-        experimentMode = true;
-        maxEpisodes = episodes;
-        totalUtility = 0.0;
-        episode = 0;
-        resetEpisode();
+    public void startExperiment(int episodes) {
+        synchronized (control) {
+            experimentMode = true;
+            maxEpisodes = episodes;
+            utilities = new EpisodeStats();
+            closeResults();
+            if (resultsFile != null) {
+                try {
+                    results = ResultsWriter.open(resultsFile, 0L); // no seed: episodes come from live agents
+                } catch (IOException e) {
+                    System.err.println("results: cannot write " + resultsFile + ": " + e);
+                }
+            }
+            episode = 0;
+            layoutCount = 0;
+            experimentSteps.reset();
+            experimentStart = System.nanoTime();
+            resetEpisode();
+        }
     }
 
-    private void resetEpisode() {
-        model.resetToPdfLayout();
-        stepCounter = 0;
-        updatePercepts();
-        if (view != null) view.updateFromModel(model);
-        informAgsEnvironmentChanged();
+    // ends the running episode like next_episode and starts the next one; returns its utility
+    public double endEpisode() {
+        return finishEpisodeAndMaybeContinue();
     }
 
-    private void finishEpisodeAndMaybeContinue() {
-        int goalsAchieved = 0;
-        if (model.tableColored) goalsAchieved++;
-        if (model.chairColored) goalsAchieved++;
-        if (model.doorOpen) goalsAchieved++;
+    public void resetEpisode() {
+        synchronized (control) {
+            model.resetToLayout(nextLayout());
+            if (trace != null) trace.episodeStart(model);
+            for (AgentState st : agents) {
+                synchronized (st) {
+                    st.steps = 0;
+                    st.staticVersion = -1; // episode/experiment facts change between episodes
+                    updatePercepts(st, null);
+                }
+            }
+            if (view != null) view.updateFromModel(model);
+            informAgsEnvironmentChanged();
+        }
+    }
 
-        double utility = (100.0 * goalsAchieved) - stepCounter;
-        totalUtility += utility;
+    private double finishEpisodeAndMaybeContinue() {
+        synchronized (control) {
+            int goalsAchieved = 0;
+            if (model.tableColored) goalsAchieved++;
+            if (model.chairColored) goalsAchieved++;
+            if (model.doorOpen) goalsAchieved++;
+
+            // steps of all agents count against the shared goals
+            int steps = 0;
+            for (AgentState st : agents) steps += st.steps;
+
+            double utility = (100.0 * goalsAchieved) - steps;
+            utilities.add(utility);
+            if (metrics != null) metrics.episode(steps, utility);
+
+            episode++;
+            if (experimentMode && results != null) {
+                try {
+                    results.write(episode, utility);
+                } catch (IOException e) {
+                    System.err.println("results: cannot write " + resultsFile + ": " + e);
+                    closeResults();
+                }
+            }
 
-        episode++;
+            if (experimentMode && episode >= maxEpisodes) {
+                System.out.println(">>> EXPERIMENT COMPLETE <<<");
+                System.out.println("Average Utility (" + maxEpisodes + " episodes): " + (utilities.sum() / maxEpisodes));
+                System.out.println("Utility: " + utilities);
+                closeResults();
+                double secs = (System.nanoTime() - experimentStart) / 1e9;
+                long total = experimentSteps.sum();
+                System.out.printf("Steps: %d in %.2f s (%.0f steps/s, %s)%n", total, secs,
+                        total / Math.max(secs, 1e-9), view == null ? "headless" : "with view");
+                System.out.println("Path cache: " + model.pathCache);
+                if (model.pathEngine == PathFinding.Engine.INCREMENTAL) System.out.println(model.incrementalPath);
+                System.out.println("Layout caches: " + model.layoutCaches());
+                System.out.println(actions);
+                experimentMode = false;
+            }
 
-        if (experimentMode && episode >= maxEpisodes) {
-            System.out.println(">>> EXPERIMENT COMPLETE <<<");
-            System.out.println("Average Utility (" + maxEpisodes + " episodes): " + (totalUtility / maxEpisodes));
-            experimentMode = false;
+            resetEpisode();
+            return utility;
         }
+    }
 
-        resetEpisode();
+    // guarded by control
+    private void closeResults() {
+        if (results == null) return;
+        try {
+            results.close();
+        } catch (IOException e) {
+            System.err.println("results: cannot close " + resultsFile + ": " + e);
+        }
+        results = null;
     }
 
     // ===================== Model =====================
 
-    public class GridModel extends GridWorldModel {
+    // static so headless runners (Experiment) can build models without a GridEnv
+    public static class GridModel extends GridWorldModel {
 
         static final int MAX_CARRY = 3;
 
-        boolean hasBrush = false;
-        boolean hasKey   = false;
-        boolean hasCode  = false;
-        boolean hasColor = false;
+        static final int ITEMS = BRUSH | KEY | CODE | COLOR;
+
+        // carried items of each agent, as a mask of ITEMS
+        private final int[] inventory;
+
+        volatile boolean tableColored = false;
+        volatile boolean chairColored = false;
+        volatile boolean doorOpen     = false;
+
+        // bumped whenever an object or a colored/open flag changes (agent moves do not count),
+        // so GridEnv can tell when the other agents' percepts are out of date
+        final AtomicLong worldVersion = new AtomicLong();
+
+        // agent names (index = agent id), set by GridEnv
+        private String[] agentNames = {AG_NAME};
+
+        // A* implementation used by move(X,Y) and .plan_path
+        PathFinding.Engine pathEngine = PathFinding.getDefaultEngine();
+
+        // the owning GridEnv's metrics (null if off); path searches on this model are reported there
+        volatile EnvMetrics metrics;
 
-        boolean tableColored = false;
-        boolean chairColored = false;
-        boolean doorOpen     = false;
+        // bumped whenever an OBST is added or removed; keys the path cache
+        volatile long layoutVersion = 0;
+        final PathCache pathCache = new PathCache();
+
+        // D* Lite searches per agent and goal, repaired from the obstacle log (pathfinding=incremental)
+        final IncrementalPath incrementalPath = new IncrementalPath();
+
+        // obstacleLog[v % OBSTACLE_LOG] is the cell whose OBST change moved layoutVersion from v to v + 1
+        private static final int OBSTACLE_LOG = 256;
+        private final int[] obstacleLog = new int[OBSTACLE_LOG];
+
+        // BFS distance fields towards object locations, also keyed by layoutVersion
+        final DistanceOracle oracle = new DistanceOracle();
+
+        // full-mission plans (plan_mission), distances keyed by layoutVersion
+        final MissionPlanner missionPlanner = new MissionPlanner();
+
+        // time-budgeted search for the next action (plan_mcts), kernel rebuilt with the layout
+        final MctsPlanner mctsPlanner = new MctsPlanner();
+
+        // How object occupancy is stored and queried.
+        // ARRAY uses GridWorldModel's int[][] data only; BITBOARD also keeps one bitset per object
+        // and answers queries from it (data[][] is still written, so GridView renders either way).
+        public enum Storage {
+            ARRAY, BITBOARD;
+
+            public static Storage parse(String s) {
+                return s != null && s.trim().equalsIgnoreCase("bitboard") ? BITBOARD : ARRAY;
+            }
+        }
+
+        static final int ALL_OBJECTS = OBST | BRUSH | KEY | CODE | DOOR | CHAIR | COLOR | TABLE;
+
+        private final Storage storage;
+        private final Bitboard bits; // null in ARRAY mode
+
+        // where each object is; kept up to date by add/remove/set in both storage modes
+        private final ObjectIndex index = new ObjectIndex();
+
+        private volatile Layout layout; // replaced by resetToLayout(Layout) between episodes
+
+        // Zobrist hash of the live obstacles (Layout.cellKey of every OBST cell), updated with layoutVersion;
+        // keys the caches of structures derived from the walls
+        volatile long wallHash = 0;
+
+        // obstacle grid shared by path queries; rebuilt when layoutVersion moves on, unless the walls
+        // match a recently seen wall set
+        private boolean[][] blockedCache;
+        private long blockedVersion = -1;
+        private final LayoutCache<boolean[][]> blockedGrids = new LayoutCache<>("blockedGrid", 8);
+
+        // Striped locks over 64-cell regions (one Bitboard word each). An action locks the regions of the
+        // cells it changes, so agents acting in different parts of the grid run in parallel; a reset
+        // takes all of them. Single-threaded users (Experiment, EpisodeRunner) never touch them.
+        private final ReentrantLock[] stripes;
+        private final int stripeMask;
+        private static final int MAX_STRIPES = 64;
 
         public GridModel() {
-            super(WIDTH, HEIGHT, 1);
+            this(Layout.pdf());
+        }
+
+        public GridModel(Storage storage) {
+            this(Layout.pdf(), storage);
+        }
+
+        public GridModel(Layout layout) {
+            this(layout, Storage.parse(System.getProperty("gridmodel.storage")));
+        }
+
+        public GridModel(Layout layout, Storage storage) {
+            this(layout, storage, 1);
         }
 
+        public GridModel(Layout layout, Storage storage, int agents) {
+            super(layout.width(), layout.height(), agents);
+            this.layout = layout;
+            this.storage = storage;
+            int cells = layout.width() * layout.height();
+            this.bits = storage == Storage.BITBOARD ? new Bitboard(cells) : null;
+            if (bits != null) bits.reserve(ALL_OBJECTS | AGENT);
+            this.inventory = new int[agents];
+
+            int regions = (cells + 63) >>> 6;
+            int n = Math.min(MAX_STRIPES, Integer.highestOneBit(regions * 2 - 1));
+            this.stripes = new ReentrantLock[n];
+            for (int i = 0; i < n; i++) stripes[i] = new ReentrantLock();
+            this.stripeMask = n - 1;
+        }
+
+        Storage storage() { return storage; }
+
+        Layout layout() { return layout; }
+
         // PDF (1-based, bottom-left) -> internal (0-based, top-left)
         int ix(int X) { return X - 1; }
-        int iy(int Y) { return HEIGHT - Y; }
+        int iy(int Y) { return getHeight() - Y; }
 
         // internal -> PDF
         int px(int x) { return x + 1; }
-        int py(int y) { return HEIGHT - y; }
+        int py(int y) { return getHeight() - y; }
+
+        // ----- agents -----
+
+        void nameAgents(String[] names) {
+            if (names.length != getNbOfAgs()) throw new IllegalArgumentException(names.length + " names for " + getNbOfAgs() + " agents");
+            agentNames = names.clone();
+        }
+
+        String agentName(int ag) { return agentNames[ag]; }
+
+        // agent id of a name, -1 if unknown; with a single agent every name maps to it (any mas2j agent name works)
+        int agentId(String name) {
+            for (int i = 0; i < agentNames.length; i++) {
+                if (agentNames[i].equals(name)) return i;
+            }
+            return agentNames.length == 1 ? 0 : -1;
+        }
+
+        // agent 0 starts where the layout says, the others on the nearest free cells around it (BFS order)
+        private int[] agentStarts() {
+            int n = getNbOfAgs(), w = getWidth(), cells = w * getHeight();
+            int[] starts = new int[n];
+            starts[0] = layout.agentCell();
+            if (n == 1) return starts;
+
+            boolean[] taken = new boolean[cells];
+            for (int i = 0; i < layout.wallCount(); i++) taken[layout.wallCell(i)] = true;
+            boolean[] occupied = taken.clone();
+            for (int i = 0; i < layout.objectCount(); i++) occupied[layout.objectCell(i)] = true;
+
+            int[] queue = new int[cells];
+            int head = 0, tail = 0, placed = 1;
+            queue[tail++] = starts[0];
+            taken[starts[0]] = true;
+            while (head < tail && placed < n) {
+                int c = queue[head++];
+                if (c != starts[0] && !occupied[c]) starts[placed++] = c;
+                int x = c % w, y = c / w;
+                int[] nbrs = {x > 0 ? c - 1 : -1, x < w - 1 ? c + 1 : -1, y > 0 ? c - w : -1, c + w < cells ? c + w : -1};
+                for (int nb : nbrs) {
+                    if (nb >= 0 && !taken[nb]) {
+                        taken[nb] = true;
+                        queue[tail++] = nb;
+                    }
+                }
+            }
+            if (placed < n) throw new IllegalStateException("no room for " + n + " agents in " + layout);
+            return starts;
+        }
+
+        // ----- region locks -----
+
+        private int stripeOf(int cell) {
+            return (cell >>> 6) & stripeMask;
+        }
+
+        void lockAll() {
+            for (ReentrantLock l : stripes) l.lock();
+        }
+
+        void unlockAll() {
+            for (int i = stripes.length - 1; i >= 0; i--) stripes[i].unlock();
+        }
+
+        // puts the agents, walls and objects back where the layout says and clears all progress
+        void resetToLayout() {
+            resetToLayout(layout);
+        }
+
+        // same for another layout of this size. Walls are only touched where they differ from the live
+        // ones, so episodes on the same walls keep layoutVersion and everything cached for it.
+        void resetToLayout(Layout next) {
+            if (next.width() != getWidth() || next.height() != getHeight()) {
+                throw new IllegalArgumentException(next + " does not fit a " + getWidth() + "x" + getHeight() + " model");
+            }
+            lockAll();
+            try {
+                layout = next;
+                clearObjects(ALL_OBJECTS & ~OBST);
+                if (wallHash != next.wallHash() || objectCount(OBST) != next.wallCount()) replaceWalls(next);
+
+                // clear every agent first, so placing one never wipes the AGENT bit of another
+                int w = getWidth();
+                for (int ag = 0; ag < getNbOfAgs(); ag++) {
+                    Location o = getAgPos(ag);
+                    if (o != null) remove(AGENT, o.x, o.y);
+                }
+                int[] starts = agentStarts();
+                for (int ag = 0; ag < starts.length; ag++) {
+                    agPos[ag] = new Location(starts[ag] % w, starts[ag] / w);
+                    add(AGENT, starts[ag] % w, starts[ag] / w);
+                }
+
+                for (int i = 0; i < layout.objectCount(); i++) {
+                    int c = layout.objectCell(i);
+                    add(layout.objectMask(i), c % w, c / w);
+                }
+
+                Arrays.fill(inventory, 0);
+                tableColored = chairColored = doorOpen = false;
+                worldVersion.incrementAndGet();
+            } finally {
+                unlockAll();
+            }
+        }
+
+        @Override
+        public void add(int value, int x, int y) {
+            int fresh = inGrid(x, y) ? value & ALL_OBJECTS & ~data[x][y] : 0;
+            super.add(value, x, y);
+            int c = y * getWidth() + x;
+            if (bits != null) bits.add(value, c);
+            for (int v = fresh; v != 0; v &= v - 1) index.add(Integer.lowestOneBit(v), c);
+            if ((fresh & OBST) != 0) obstacleChanged(c);
+            if (fresh != 0) worldVersion.incrementAndGet();
+        }
+
+        @Override
+        public void remove(int value, int x, int y) {
+            int gone = inGrid(x, y) ? value & ALL_OBJECTS & data[x][y] : 0;
+            super.remove(value, x, y);
+            int c = y * getWidth() + x;
+            if (bits != null) bits.remove(value, c);
+            for (int v = gone; v != 0; v &= v - 1) index.remove(Integer.lowestOneBit(v), c);
+            if ((gone & OBST) != 0) obstacleChanged(c);
+            if (gone != 0) worldVersion.incrementAndGet();
+        }
+
+        @Override
+        public void set(int value, int x, int y) {
+            int old = data[x][y];
+            super.set(value, x, y);
+            int c = y * getWidth() + x;
+            if (bits != null) {
+                bits.remove(-1, c);
+                bits.add(value, c);
+            }
+            for (int v = old & ALL_OBJECTS & ~value; v != 0; v &= v - 1) index.remove(Integer.lowestOneBit(v), c);
+            for (int v = value & ALL_OBJECTS & ~old; v != 0; v &= v - 1) index.add(Integer.lowestOneBit(v), c);
+            if (((old ^ value) & OBST) != 0) obstacleChanged(c);
+            if (((old ^ value) & ALL_OBJECTS) != 0) worldVersion.incrementAndGet();
+        }
+
+        private synchronized void obstacleChanged(int c) {
+            obstacleLog[(int) (layoutVersion % OBSTACLE_LOG)] = c;
+            wallHash ^= Layout.cellKey(c);
+            layoutVersion++;
+        }
+
+        private void replaceWalls(Layout next) {
+            int w = getWidth();
+            boolean[] wall = new boolean[w * getHeight()];
+            for (int i = 0; i < next.wallCount(); i++) wall[next.wallCell(i)] = true;
+            for (int c : index.cells(OBST)) {
+                if (!wall[c]) remove(OBST, c % w, c / w);
+            }
+            for (int i = 0; i < next.wallCount(); i++) {
+                int c = next.wallCell(i);
+                if (!hasObject(OBST, c % w, c / w)) add(OBST, c % w, c / w);
+            }
+        }
 
-        void resetToPdfLayout() {
-            clearAllObjects();
+        // hit rates of the wall-keyed caches (blocked grid, distance fields, mission planner tables)
+        String layoutCaches() {
+            return blockedGrids + " " + oracle.cache() + " " + missionPlanner.cache();
+        }
 
-            try { setAgPos(0, ix(1), iy(1)); } catch (Exception e) { e.printStackTrace(); }
+        // cells whose OBST bit changed since layout version v, null if the log no longer reaches back
+        synchronized int[] obstacleChangesSince(long v) {
+            long now = layoutVersion;
+            if (v > now || now - v > OBSTACLE_LOG) return null;
+            int[] out = new int[(int) (now - v)];
+            for (int i = 0; i < out.length; i++) out[i] = obstacleLog[(int) ((v + i) % OBSTACLE_LOG)];
+            return out;
+        }
+
+        // raw cell value (object bits | AGENT | OBSTACLE), for the view's snapshots
+        int cellValue(int x, int y) {
+            return data[x][y];
+        }
+
+        @Override
+        public boolean hasObject(int obj, int x, int y) {
+            if (bits == null) return super.hasObject(obj, x, y);
+            return inGrid(x, y) && bits.has(obj, y * getWidth() + x);
+        }
+
+        @Override
+        public boolean hasObject(int obj, Location l) {
+            if (bits == null) return super.hasObject(obj, l);
+            return hasObject(obj, l.x, l.y);
+        }
+
+        // reports a path search on this model to its environment's metrics, if enabled
+        void searched(int expanded, int pathLength) {
+            EnvMetrics mt = metrics;
+            if (mt != null) mt.search(expanded, pathLength);
+        }
+
+        // shortest path as cell indices (y * width + x), answered from the path cache when possible
+        int[] findPath(int sx, int sy, int gx, int gy) {
+            return pathCache.path(this, sx, sy, gx, gy);
+        }
+
+        // same for agent ag; the INCREMENTAL engine repairs that agent's search for the goal instead
+        int[] findPath(int ag, int sx, int sy, int gx, int gy) {
+            if (pathEngine == PathFinding.Engine.INCREMENTAL) return incrementalPath.path(this, ag, sx, sy, gx, gy);
+            return pathCache.path(this, sx, sy, gx, gy);
+        }
+
+        // number of cells holding a single object bit (OBST, BRUSH, ...), from the index
+        int objectCount(int bit) {
+            return index.size(bit);
+        }
 
-            // walls (PDF): (2,1), (2,2), (4,4), (4,5)
-            add(OBST, ix(2), iy(1));
-            add(OBST, ix(2), iy(2));
-            add(OBST, ix(4), iy(4));
-            add(OBST, ix(4), iy(5));
+        // i-th cell index (y * width + x) holding a single object bit, 0 <= i < objectCount(bit)
+        int objectCell(int bit, int i) {
+            return index.cell(bit, i);
+        }
 
-            // objects (fixed positions)
-            add(BRUSH, ix(1), iy(5));
-            add(KEY,   ix(1), iy(4));
-            add(CODE,  ix(3), iy(5));
-            add(COLOR, ix(5), iy(5));
-            add(CHAIR, ix(4), iy(2));
-            add(DOOR,  ix(3), iy(1));
-            add(TABLE, ix(5), iy(1));
+        // cells holding a single object bit; a snapshot that is safe while agents act, do not modify
+        int[] objectCells(int bit) {
+            return index.cells(bit);
+        }
 
-            hasBrush = hasKey = hasCode = hasColor = false;
-            tableColored = chairColored = doorOpen = false;
+        // first location holding a single object bit, null if there is none
+        Location objectLocation(int bit) {
+            int[] cs = index.cells(bit);
+            if (cs.length == 0) return null;
+            return new Location(cs[0] % getWidth(), cs[0] / getWidth());
         }
 
-        boolean[][] blockedGrid() {
-            boolean[][] blocked = new boolean[HEIGHT][WIDTH];
-            for (int y = 0; y < HEIGHT; y++) {
-                for (int x = 0; x < WIDTH; x++) {
-                    blocked[y][x] = hasObject(OBST, new Location(x,y));
+        // cells holding a single object bit within Manhattan radius r of (x,y).
+        // Walks the index when it is smaller than the diamond, otherwise the diamond itself.
+        void forEachObjectWithin(int bit, int x, int y, int r, IntConsumer action) {
+            int w = getWidth();
+            int[] cs = index.cells(bit);
+            long area = 2L * r * (r + 1) + 1;
+            if (cs.length <= area) {
+                for (int c : cs) {
+                    if (Math.abs(c % w - x) + Math.abs(c / w - y) <= r) action.accept(c);
                 }
+                return;
             }
+            for (int dy = -r; dy <= r; dy++) {
+                int cy = y + dy;
+                if (cy < 0 || cy >= getHeight()) continue;
+                int span = r - Math.abs(dy);
+                for (int cx = Math.max(0, x - span); cx <= Math.min(w - 1, x + span); cx++) {
+                    if (hasObject(bit, cx, cy)) action.accept(cy * w + cx);
+                }
+            }
+        }
+
+        // BFS steps from (x,y) to the object with this mask, DistanceOracle.UNREACHABLE if absent or cut off
+        int distanceToObject(int x, int y, int mask) {
+            Location o = objectLocation(mask);
+            if (o == null) return DistanceOracle.UNREACHABLE;
+            return oracle.distance(this, x, y, o.x, o.y);
+        }
+
+        // first cell index of a shortest path from (x,y) to the object with this mask, -1 if already
+        // there, absent or cut off; O(1) from the same BFS field as distanceToObject
+        int nextStepToObject(int x, int y, int mask) {
+            Location o = objectLocation(mask);
+            if (o == null) return -1;
+            return oracle.nextStep(this, x, y, o.x, o.y);
+        }
+
+        // blocked[y][x] for every OBST; shared between callers until the layout changes, do not modify
+        synchronized boolean[][] blockedGrid() {
+            long v = layoutVersion;
+            if (blockedCache != null && blockedVersion == v) return blockedCache;
+            int w = getWidth();
+            boolean[][] blocked = blockedGrids.get(wallHash, k -> {
+                boolean[][] b = new boolean[getHeight()][w];
+                for (int c : index.cells(OBST)) b[c / w][c % w] = true;
+                return b;
+            });
+            blockedCache = blocked;
+            blockedVersion = v;
             return blocked;
         }
 
-        private void clearAllObjects() {
-            for (int x = 0; x < getWidth(); x++) {
-                for (int y = 0; y < getHeight(); y++) {
-                    Location l = new Location(x, y);
-                    remove(OBST,  l);
-                    remove(BRUSH, l);
-                    remove(KEY,   l);
-                    remove(CODE,  l);
-                    remove(DOOR,  l);
-                    remove(CHAIR, l);
-                    remove(COLOR, l);
-                    remove(TABLE, l);
+        // walks the index backwards, so only occupied cells are touched
+        private void clearObjects(int mask) {
+            int w = getWidth();
+            for (int v = mask; v != 0; v &= v - 1) {
+                int bit = Integer.lowestOneBit(v);
+                for (int n = index.size(bit); n > 0; n = index.size(bit)) {
+                    int c = index.cell(bit, n - 1);
+                    remove(bit, c % w, c / w);
                 }
             }
         }
 
+        // O(k) from the index; a cell matching several bits of mask is listed once
         List<Location> getOccupiedLocationsWithMask(int mask) {
             List<Location> out = new ArrayList<>();
-            for (int x = 0; x < getWidth(); x++) {
-                for (int y = 0; y < getHeight(); y++) {
-                    Location l = new Location(x, y);
-                    if (hasObject(mask, l)) out.add(l);
+            int w = getWidth();
+            int seen = 0;
+            for (int v = mask & ALL_OBJECTS; v != 0; v &= v - 1) {
+                int bit = Integer.lowestOneBit(v);
+                for (int c : index.cells(bit)) {
+                    if (seen != 0 && hasObject(seen, c % w, c / w)) continue;
+                    out.add(new Location(c % w, c / w));
                 }
+                seen |= bit;
             }
             return out;
         }
 
         boolean canMoveAgentTo(int x, int y) {
             if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight()) return false;
+            if (bits != null) return !bits.has(OBST, y * getWidth() + x);
             return !hasObject(OBST, new Location(x, y));
         }
 
+        // moves agent ag to (x,y) unless it is outside, an obstacle or taken by another agent
+        boolean moveAgent(int ag, int x, int y) {
+            if (!canMoveAgentTo(x, y)) return false;
+            Location a = getAgPos(ag);
+            int w = getWidth();
+            int s1 = stripeOf(a.y * w + a.x), s2 = stripeOf(y * w + x);
+            ReentrantLock first = stripes[Math.min(s1, s2)], second = stripes[Math.max(s1, s2)];
+            first.lock();
+            second.lock();
+            try {
+                if (hasObject(AGENT, x, y)) return false;
+                setAgPos(ag, x, y);
+                return true;
+            } finally {
+                second.unlock();
+                first.unlock();
+            }
+        }
+
         int carriedCount() {
-            int c = 0;
-            if (hasBrush) c++;
-            if (hasKey)   c++;
-            if (hasCode)  c++;
-            if (hasColor) c++;
-            return c;
+            return carriedCount(0);
+        }
+
+        int carriedCount(int ag) {
+            return Integer.bitCount(inventory[ag]);
+        }
+
+        // items agent ag carries (mask of ITEMS)
+        int inventory(int ag) {
+            return inventory[ag];
+        }
+
+        // true if agent ag carries the item mask
+        boolean carries(int ag, int mask) {
+            return (inventory[ag] & mask) != 0;
+        }
+
+        // sets or clears carried items of agent ag (mask of ITEMS)
+        void setCarrying(int ag, int mask, boolean v) {
+            if (v) inventory[ag] |= mask & ITEMS;
+            else inventory[ag] &= ~mask;
         }
 
         boolean pickAtAgent(String tok) {
-            if (carriedCount() >= MAX_CARRY) return false;
+            return pickAtAgent(tokenToMask(tok));
+        }
 
-            Location a = getAgPos(0);
-            int mask = tokenToMask(tok);
-            if (mask == 0) return false;
+        boolean pickAtAgent(int mask) {
+            return pickAtAgent(0, mask);
+        }
 
-            if (hasObject(mask, a)) {
-                remove(mask, a);
-                setInventory(mask, true);
-                return true;
+        // mask is a single item (BRUSH, KEY, CODE, COLOR); anything else fails
+        boolean pickAtAgent(int ag, int mask) {
+            if (carriedCount(ag) >= MAX_CARRY) return false;
+            if (!isItem(mask)) return false;
+
+            Location a = getAgPos(ag);
+            ReentrantLock l = stripes[stripeOf(a.y * getWidth() + a.x)];
+            l.lock();
+            try {
+                if (hasObject(mask, a)) {
+                    remove(mask, a);
+                    setCarrying(ag, mask, true);
+                    return true;
+                }
+                return false;
+            } finally {
+                l.unlock();
             }
-            return false;
         }
 
         boolean dropAtAgent(String tok) {
-            Location a = getAgPos(0);
-            int mask = tokenToMask(tok);
-            if (mask == 0) return false;
+            return dropAtAgent(tokenToMask(tok));
+        }
+
+        boolean dropAtAgent(int mask) {
+            return dropAtAgent(0, mask);
+        }
 
-            if (!getInventory(mask)) return false;
-            if (hasObject(OBST, a)) return false;
+        boolean dropAtAgent(int ag, int mask) {
+            if (!isItem(mask)) return false;
+            Location a = getAgPos(ag);
 
-            // don't stack pickup items
-            if (hasObject(BRUSH, a) || hasObject(KEY, a) || hasObject(CODE, a) || hasObject(COLOR, a)) return false;
+            if (!carries(ag, mask)) return false;
+            ReentrantLock l = stripes[stripeOf(a.y * getWidth() + a.x)];
+            l.lock();
+            try {
+                if (hasObject(OBST, a)) return false;
 
-            add(mask, a.x, a.y);
-            setInventory(mask, false);
-            return true;
+                // don't stack pickup items
+                if (hasObject(ITEMS, a)) return false;
+
+                add(mask, a.x, a.y);
+                setCarrying(ag, mask, false);
+                return true;
+            } finally {
+                l.unlock();
+            }
+        }
+
+        private static boolean isItem(int mask) {
+            return mask == BRUSH || mask == KEY || mask == CODE || mask == COLOR;
         }
 
         private int tokenToMask(String tok) {
@@ -448,55 +1287,68 @@ public class GridEnv extends Environment {
             return 0;
         }
 
-        private void setInventory(int mask, boolean v) {
-            if (mask == BRUSH) hasBrush = v;
-            if (mask == KEY)   hasKey = v;
-            if (mask == CODE)  hasCode = v;
-            if (mask == COLOR) hasColor = v;
+        // any object symbol, including the targets (t, ch, d)
+        static int objectMask(String tok) {
+            if (tok.equalsIgnoreCase("t")  || tok.equalsIgnoreCase("table")) return TABLE;
+            if (tok.equalsIgnoreCase("ch") || tok.equalsIgnoreCase("chair")) return CHAIR;
+            if (tok.equalsIgnoreCase("d")  || tok.equalsIgnoreCase("door"))  return DOOR;
+            if (tok.equalsIgnoreCase("b")  || tok.equalsIgnoreCase("brush")) return BRUSH;
+            if (tok.equalsIgnoreCase("k")  || tok.equalsIgnoreCase("key"))   return KEY;
+            if (tok.equalsIgnoreCase("cd") || tok.equalsIgnoreCase("code"))  return CODE;
+            if (tok.equalsIgnoreCase("cl") || tok.equalsIgnoreCase("color")) return COLOR;
+            return 0;
         }
 
-        private boolean getInventory(int mask) {
-            if (mask == BRUSH) return hasBrush;
-            if (mask == KEY)   return hasKey;
-            if (mask == CODE)  return hasCode;
-            if (mask == COLOR) return hasColor;
-            return false;
+        boolean paintTarget(String targetTok) {
+            int mask = objectMask(targetTok);
+            return (mask == TABLE || mask == CHAIR) && paintTarget(mask);
         }
 
-        boolean paintTarget(String targetTok) {
-            Location a = getAgPos(0);
-            if (!hasBrush || !hasColor) return false;
+        boolean paintTarget(int targetMask) {
+            return paintTarget(0, targetMask);
+        }
+
+        // mask is TABLE or CHAIR
+        boolean paintTarget(int ag, int targetMask) {
+            Location a = getAgPos(ag);
+            if (!carries(ag, BRUSH) || !carries(ag, COLOR)) return false;
 
-            if (targetTok.equalsIgnoreCase("T") || targetTok.equalsIgnoreCase("table")) {
-                if (hasObject(TABLE, a)) { tableColored = true; return true; }
+            if (targetMask == TABLE) {
+                if (hasObject(TABLE, a)) { tableColored = true; worldVersion.incrementAndGet(); return true; }
                 return false;
             }
-            if (targetTok.equalsIgnoreCase("Ch") || targetTok.equalsIgnoreCase("chair")) {
-                if (hasObject(CHAIR, a)) { chairColored = true; return true; }
+            if (targetMask == CHAIR) {
+                if (hasObject(CHAIR, a)) { chairColored = true; worldVersion.incrementAndGet(); return true; }
                 return false;
             }
             return false;
         }
 
         boolean openDoor() {
-            if (!hasKey || !hasCode) return false;
+            return openDoor(0);
+        }
+
+        boolean openDoor(int ag) {
+            if (!carries(ag, KEY) || !carries(ag, CODE)) return false;
 
-            Location a = getAgPos(0);
-            List<Location> ds = getOccupiedLocationsWithMask(DOOR);
-            if (ds.isEmpty()) return false;
+            Location a = getAgPos(ag);
+            Location d = objectLocation(DOOR);
+            if (d == null) return false;
 
-            Location d = ds.get(0);
             int manhattan = Math.abs(a.x - d.x) + Math.abs(a.y - d.y);
             if (manhattan != 1) return false;
 
             doorOpen = true;
+            worldVersion.incrementAndGet();
             return true;
         }
 
         double carryingReward() {
-            int carried = carriedCount();
-            if (carried == 0) return -0.01;
-            return carried * (-0.02);
+            return carryingReward(0);
+        }
+
+        double carryingReward(int ag) {
+            return rewardForCarrying(carriedCount(ag));
         }
     }
 }
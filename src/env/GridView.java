@@ -6,11 +6,41 @@ import java.awt.Graphics;
 import java.awt.BorderLayout;
 import java.awt.Panel;
 import java.awt.Button;
+import java.awt.Canvas;
 
+import javax.swing.Timer;
+
+import jason.environment.grid.GridWorldModel;
 import jason.environment.grid.GridWorldView;
 
+//Model changes (GridWorldModel calls update(x,y) on every add/remove/setAgPos) only mark cells dirty.
+//updateFromModel, called by GridEnv once an action is complete, copies the dirty cells into a snapshot,
+//and a Swing timer on the EDT draws the cells changed since the last frame at most fps times a second.
+//The canvas never reads the live GridModel, so a frame always shows the state between two actions.
+
 public class GridView extends GridWorldView {
 
+    public static final int DEFAULT_FPS = 30;
+
+    private final int cols, rows;
+
+    // env thread -> snapshot; guarded by lock
+    private final Object lock = new Object();
+    private final boolean[] pending;        // changed in the model since the last updateFromModel
+    private final int[] pendingList;
+    private int pendingCount;
+    private final boolean[] ready;          // snapshotted, not drawn yet
+    private final int[] readyList;
+    private int readyCount;
+    private boolean pendingAll = true, readyAll;
+    private final int[] snapData, snapAgent;
+
+    // EDT only
+    private final int[] frameData, frameAgent;
+    private final int[] drawList;
+    private final SnapshotCanvas canvas = new SnapshotCanvas();
+    private final Timer tick;
+
     private final int cellSizeLocal;
     private final Font defaultFontLocal;
     private Runnable onRunOneEpisode = null;
@@ -18,10 +48,32 @@ public class GridView extends GridWorldView {
     private Runnable onReset = null;
 
     public GridView(GridEnv.GridModel model) {
+        this(model, DEFAULT_FPS);
+    }
+
+    public GridView(GridEnv.GridModel model, int fps) {
         super(model, "GridEnv (PDF fixed)", 500);
 
+        cols = model.getWidth();
+        rows = model.getHeight();
+        int cells = cols * rows;
+        pending = new boolean[cells];
+        pendingList = new int[cells];
+        ready = new boolean[cells];
+        readyList = new int[cells];
+        snapData = new int[cells];
+        snapAgent = new int[cells];
+        frameData = new int[cells];
+        frameAgent = new int[cells];
+        drawList = new int[cells];
+        snapshot(model);
+
+        // the inherited canvas paints from the live model; draw from the snapshot instead
+        getContentPane().remove(drawArea);
+        getContentPane().add(canvas, BorderLayout.CENTER);
+
         int viewSize = 500;
-        this.cellSizeLocal = Math.max(8, viewSize / Math.max(GridEnv.WIDTH, GridEnv.HEIGHT));
+        this.cellSizeLocal = Math.max(8, viewSize / Math.max(model.getWidth(), model.getHeight()));
         this.defaultFontLocal = new Font("Arial", Font.BOLD, 14);
 
         // Simple control panel
@@ -38,17 +90,130 @@ public class GridView extends GridWorldView {
         p.add(oneEp);
         add(p, BorderLayout.SOUTH);
 
+        tick = new Timer(1000 / Math.max(1, fps), e -> render());
+        tick.setCoalesce(true);
+        tick.start();
+
         setVisible(true);
     }
 
+    @Override
+    public void dispose() {
+        tick.stop();
+        super.dispose();
+    }
+
     public void setEnvHooks(Runnable startExperiment, Runnable reset,Runnable runOneEpisode) {
         this.onStartExperiment = startExperiment;
         this.onReset = reset;
         this.onRunOneEpisode = runOneEpisode;
     }
 
+    @Override
+    public void update(int x, int y) {
+        if (x < 0 || y < 0 || x >= cols || y >= rows) return;
+        int c = y * cols + x;
+        synchronized (lock) {
+            if (!pending[c]) {
+                pending[c] = true;
+                pendingList[pendingCount++] = c;
+            }
+        }
+    }
+
+    @Override
+    public void update() {
+        synchronized (lock) {
+            pendingAll = true;
+        }
+    }
+
+    // called by the environment thread between actions, when the model is consistent
     public void updateFromModel(GridEnv.GridModel model) {
-        repaint();
+        snapshot(model);
+    }
+
+    private void snapshot(GridEnv.GridModel model) {
+        synchronized (lock) {
+            if (pendingAll) {
+                for (int c = 0; c < snapData.length; c++) copyCell(model, c);
+                readyAll = true;
+                pendingAll = false;
+            }
+            for (int i = 0; i < pendingCount; i++) {
+                int c = pendingList[i];
+                pending[c] = false;
+                copyCell(model, c);
+                if (!ready[c]) {
+                    ready[c] = true;
+                    readyList[readyCount++] = c;
+                }
+            }
+            pendingCount = 0;
+        }
+    }
+
+    private void copyCell(GridEnv.GridModel model, int c) {
+        int x = c % cols, y = c / cols;
+        int v = model.cellValue(x, y);
+        snapData[c] = v;
+        snapAgent[c] = (v & GridWorldModel.AGENT) != 0 ? model.getAgAtPos(x, y) : -1;
+    }
+
+    // render tick on the EDT: take the cells changed since the last frame and draw only those
+    private void render() {
+        int n;
+        boolean all;
+        synchronized (lock) {
+            all = readyAll;
+            readyAll = false;
+            n = readyCount;
+            for (int i = 0; i < n; i++) {
+                int c = readyList[i];
+                ready[c] = false;
+                drawList[i] = c;
+                frameData[c] = snapData[c];
+                frameAgent[c] = snapAgent[c];
+            }
+            readyCount = 0;
+            if (all) {
+                System.arraycopy(snapData, 0, frameData, 0, frameData.length);
+                System.arraycopy(snapAgent, 0, frameAgent, 0, frameAgent.length);
+            }
+        }
+        if (all) {
+            canvas.repaint();
+            return;
+        }
+        if (n == 0) return;
+        Graphics g = canvas.getGraphics();
+        if (g == null) return;
+        try {
+            for (int i = 0; i < n; i++) drawCell(g, drawList[i]);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private void drawCell(Graphics g, int c) {
+        int x = c % cols, y = c / cols;
+        int v = frameData[c];
+        drawEmpty(g, x, y);
+        if ((v & GridWorldModel.OBSTACLE) != 0) drawObstacle(g, x, y);
+        for (int obj = GridWorldModel.OBSTACLE << 1; obj < (1 << 14); obj <<= 1) {
+            if ((v & obj) != 0) draw(g, x, y, obj);
+        }
+        if ((v & GridWorldModel.AGENT) != 0) drawAgent(g, x, y, Color.blue, frameAgent[c]);
+    }
+
+    // full repaints (first frame, resize, expose) from the EDT-side frame
+    private class SnapshotCanvas extends Canvas {
+        @Override
+        public void paint(Graphics g) {
+            cellSizeW = getWidth() / cols;
+            cellSizeH = getHeight() / rows;
+            for (int c = 0; c < frameData.length; c++) drawCell(g, c);
+        }
     }
 
     private void label(Graphics g, int x, int y, String text) {
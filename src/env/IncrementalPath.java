@@ -0,0 +1,337 @@
+package env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Incremental path planning (pathfinding=incremental): D* Lite searches that live on between queries.
+//Each agent keeps a few searches, one per goal. A search runs backwards from its goal, so the agent
+//walking along the path costs nothing, and obstacle changes (GridModel's obstacle log, by layoutVersion)
+//only re-expand the cells whose distance actually changes. A goal that moved a few cells (a door or table
+//relocated) is retargeted in place: the old goal loses its zero distance, the new one gets it, and the
+//same repair runs. Path lengths equal a full A* search; among equally short paths the choice can differ.
+//Searches that fall too far behind the obstacle log are rebuilt from scratch.
+
+final class IncrementalPath {
+
+    private static final int SEARCHES_PER_AGENT = 4;
+    private static final int RETARGET_RADIUS = 8;   // Manhattan distance for "the goal moved"
+    private static final int[] NO_PATH = new int[0];
+
+    private final ConcurrentHashMap<Integer, List<DStarLite>> agents = new ConcurrentHashMap<>();
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder retargets = new LongAdder();
+    private final LongAdder repairedCells = new LongAdder();
+    private final LongAdder expanded = new LongAdder();
+
+    /**
+     * Shortest path for agent ag from (sx,sy) to (gx,gy) as cell indices (y * width + x), empty if
+     * unreachable. Searches of one agent are serialised; different agents plan in parallel.
+     */
+    int[] path(GridEnv.GridModel m, int ag, int sx, int sy, int gx, int gy) {
+        int w = m.getWidth(), h = m.getHeight();
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h || gx < 0 || gx >= w || gy < 0 || gy >= h) return NO_PATH;
+        int start = sy * w + sx, goal = gy * w + gx;
+        queries.increment();
+
+        List<DStarLite> searches = agents.computeIfAbsent(ag, k -> new ArrayList<>());
+        synchronized (searches) {
+            DStarLite d = pick(searches, goal, w);
+            long version;
+            boolean[][] blocked;
+            int[] changes;
+            synchronized (m) {
+                version = m.layoutVersion;
+                blocked = m.blockedGrid();
+                changes = d.blocked == null ? null : m.obstacleChangesSince(d.version);
+            }
+
+            if (changes == null || d.stale()) {
+                d.reset(blocked, w, h, start, goal);
+                rebuilds.increment();
+            } else {
+                d.blocked = blocked;
+                d.moveStart(start); // keys of the repaired cells are relative to the new start
+                if (d.goal != goal) {
+                    d.retarget(goal);
+                    retargets.increment();
+                }
+                for (int c : changes) d.cellChanged(c);
+                repairedCells.add(changes.length);
+            }
+            d.version = version;
+
+            if (blocked[sy][sx] || blocked[gy][gx]) return NO_PATH;
+            int before = d.expanded;
+            d.computeShortestPath();
+            int[] p = d.extract();
+            if (p == null) { // cannot happen with consistent g values; rebuild rather than walk a bad path
+                d.reset(blocked, w, h, start, goal);
+                rebuilds.increment();
+                d.computeShortestPath();
+                p = d.extract();
+            }
+            expanded.add(d.expanded - before);
+            m.searched(d.expanded - before, p.length);
+            return p;
+        }
+    }
+
+    // the search for goal: an exact match, else the nearest one within RETARGET_RADIUS, else a new or the
+    // least recently used one; the list is kept most recently used first
+    private static DStarLite pick(List<DStarLite> searches, int goal, int w) {
+        int best = -1, bestDist = RETARGET_RADIUS + 1;
+        for (int i = 0; i < searches.size(); i++) {
+            int g = searches.get(i).goal;
+            int dist = Math.abs(g % w - goal % w) + Math.abs(g / w - goal / w);
+            if (dist < bestDist) {
+                best = i;
+                bestDist = dist;
+            }
+        }
+        DStarLite d;
+        if (best >= 0) {
+            d = searches.remove(best);
+        } else if (searches.size() < SEARCHES_PER_AGENT) {
+            d = new DStarLite();
+        } else {
+            d = searches.remove(searches.size() - 1);
+            d.blocked = null; // force a rebuild for the new goal
+        }
+        searches.add(0, d);
+        return d;
+    }
+
+    void clear() {
+        agents.clear();
+    }
+
+    long queries()  { return queries.sum(); }
+    long rebuilds() { return rebuilds.sum(); }
+    long expanded() { return expanded.sum(); }
+
+    @Override
+    public String toString() {
+        return "IncrementalPath(queries=" + queries() + ", rebuilds=" + rebuilds() + ", retargets=" + retargets.sum()
+                + ", repairedCells=" + repairedCells.sum() + ", expanded=" + expanded() + ")";
+    }
+
+    // D* Lite (Koenig & Likhachev, optimized version) on a 4-connected grid with unit costs.
+    // g and rhs are goal distances; the heap orders by [min(g,rhs) + h(start) + km, min(g,rhs)].
+    private static final class DStarLite {
+        private static final int INF = 1 << 28;
+        private static final int MAX_KM = 1 << 28; // keys stay below 2^31
+
+        // same neighbour order as PathFinding's grid engine: up, left, right, down
+        private static final int[] DX = {0, -1, 1, 0};
+        private static final int[] DY = {-1, 0, 0, 1};
+
+        boolean[][] blocked; // null until the first reset
+        long version;
+        int goal = -1;
+        int expanded;
+
+        private int w, h;
+        private int start, km;
+        private int[] g = new int[0], rhs = new int[0];
+        private long[] keys = new long[0];
+        private int[] heap = new int[0], pos = new int[0];
+        private int size;
+
+        boolean stale() {
+            return km > MAX_KM;
+        }
+
+        void reset(boolean[][] blocked, int w, int h, int start, int goal) {
+            this.blocked = blocked;
+            this.w = w;
+            this.h = h;
+            int n = w * h;
+            if (g.length != n) {
+                g = new int[n];
+                rhs = new int[n];
+                keys = new long[n];
+                heap = new int[n];
+                pos = new int[n];
+            }
+            Arrays.fill(g, INF);
+            Arrays.fill(rhs, INF);
+            Arrays.fill(pos, -1);
+            size = 0;
+            km = 0;
+            this.start = start;
+            this.goal = goal;
+            updateVertex(goal);
+        }
+
+        void moveStart(int s) {
+            km += manhattan(start, s);
+            start = s;
+        }
+
+        void retarget(int newGoal) {
+            int old = goal;
+            goal = newGoal;
+            updateVertex(old);
+            updateVertex(newGoal);
+        }
+
+        // cell c was blocked or unblocked: its own distance and those routed through it change
+        void cellChanged(int c) {
+            updateVertex(c);
+            int x = c % w, y = c / w;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                if (nx >= 0 && nx < w && ny >= 0 && ny < h) updateVertex(ny * w + nx);
+            }
+        }
+
+        void computeShortestPath() {
+            while (size > 0 && (keys[heap[0]] < key(start) || rhs[start] != g[start])) {
+                int u = heap[0];
+                long kOld = keys[u], kNew = key(u);
+                expanded++;
+                if (kOld < kNew) {
+                    update(u, kNew);
+                } else if (g[u] > rhs[u]) {
+                    g[u] = rhs[u];
+                    remove(u);
+                    updateNeighbours(u);
+                } else {
+                    g[u] = INF;
+                    updateVertex(u);
+                    updateNeighbours(u);
+                }
+            }
+        }
+
+        // greedy descent on g from start; empty if start cannot reach the goal, null if the descent
+        // does not end at the goal
+        int[] extract() {
+            if (g[start] >= INF) return NO_PATH;
+            int[] path = new int[g[start] + 1];
+            int cur = start;
+            path[0] = cur;
+            for (int i = 1; i < path.length; i++) {
+                int x = cur % w, y = cur / w, next = -1;
+                for (int d = 0; d < 4; d++) {
+                    int nx = x + DX[d], ny = y + DY[d];
+                    if (nx < 0 || nx >= w || ny < 0 || ny >= h || blocked[ny][nx]) continue;
+                    int n = ny * w + nx;
+                    if (g[n] == g[cur] - 1) {
+                        next = n;
+                        break;
+                    }
+                }
+                if (next < 0) return null;
+                path[i] = cur = next;
+            }
+            return cur == goal ? path : null;
+        }
+
+        private void updateNeighbours(int u) {
+            int x = u % w, y = u / w;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                if (nx >= 0 && nx < w && ny >= 0 && ny < h) updateVertex(ny * w + nx);
+            }
+        }
+
+        private void updateVertex(int u) {
+            int x = u % w, y = u / w;
+            if (blocked[y][x]) {
+                rhs[u] = INF;
+            } else if (u == goal) {
+                rhs[u] = 0;
+            } else {
+                int best = INF;
+                for (int d = 0; d < 4; d++) {
+                    int nx = x + DX[d], ny = y + DY[d];
+                    if (nx < 0 || nx >= w || ny < 0 || ny >= h || blocked[ny][nx]) continue;
+                    int v = g[ny * w + nx];
+                    if (v + 1 < best) best = v + 1;
+                }
+                rhs[u] = best;
+            }
+            boolean queued = pos[u] >= 0;
+            if (g[u] != rhs[u]) {
+                if (queued) update(u, key(u));
+                else push(u, key(u));
+            } else if (queued) {
+                remove(u);
+            }
+        }
+
+        private long key(int u) {
+            long m = Math.min(g[u], rhs[u]);
+            return (m + manhattan(start, u) + km) << 32 | m;
+        }
+
+        private int manhattan(int a, int b) {
+            return Math.abs(a % w - b % w) + Math.abs(a / w - b / w);
+        }
+
+        // ===== indexed binary heap on keys[] =====
+
+        private void push(int n, long k) {
+            keys[n] = k;
+            heap[size] = n;
+            pos[n] = size;
+            siftUp(size++);
+        }
+
+        private void update(int n, long k) {
+            long old = keys[n];
+            keys[n] = k;
+            if (k < old) siftUp(pos[n]);
+            else siftDown(pos[n]);
+        }
+
+        private void remove(int n) {
+            int i = pos[n];
+            pos[n] = -1;
+            int last = heap[--size];
+            if (i == size) return;
+            heap[i] = last;
+            pos[last] = i;
+            siftUp(i);
+            siftDown(pos[last]);
+        }
+
+        private void siftUp(int i) {
+            int n = heap[i];
+            long k = keys[n];
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                int pn = heap[p];
+                if (keys[pn] <= k) break;
+                heap[i] = pn;
+                pos[pn] = i;
+                i = p;
+            }
+            heap[i] = n;
+            pos[n] = i;
+        }
+
+        private void siftDown(int i) {
+            int n = heap[i];
+            long k = keys[n];
+            int half = size >>> 1;
+            while (i < half) {
+                int c = 2 * i + 1;
+                int r = c + 1;
+                if (r < size && keys[heap[r]] < keys[heap[c]]) c = r;
+                if (k <= keys[heap[c]]) break;
+                heap[i] = heap[c];
+                pos[heap[i]] = i;
+                i = c;
+            }
+            heap[i] = n;
+            pos[n] = i;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package env;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+//Immutable world layout: grid size, agent start, walls and object positions (internal coords,
+//0-based from the top-left, cells indexed y * width + x).
+//
+//Text format, one row per line with the top row first:
+//  .  free      #  wall      A  agent start
+//  B  brush     K  key       C  code (Cd)    L  color (Cl)
+//  T  table     H  chair     D  door
+//A decimal count before a symbol repeats it ("3.#A" is "...#A"); lines starting with ';' are comments.
+
+public final class Layout {
+
+    public static final int MAX_SIZE = 2000;
+
+    private static final char[] SYMBOLS = {'B', 'K', 'C', 'L', 'T', 'H', 'D'};
+    private static final int[]  MASKS   = {GridEnv.BRUSH, GridEnv.KEY, GridEnv.CODE, GridEnv.COLOR,
+                                           GridEnv.TABLE, GridEnv.CHAIR, GridEnv.DOOR};
+
+    private final int width, height;
+    private final int agentCell;
+    private final int[] walls;
+    private final int[] objectMasks;
+    private final int[] objectCells;
+    private final long wallHash;
+
+    Layout(int width, int height, int agentCell, int[] walls, int[] objectMasks, int[] objectCells) {
+        if (width < 1 || height < 1 || width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("layout size must be 1.." + MAX_SIZE + ", got " + width + "x" + height);
+        }
+        if (objectMasks.length != objectCells.length) throw new IllegalArgumentException("object masks/cells mismatch");
+        this.width = width;
+        this.height = height;
+        this.agentCell = agentCell;
+        this.walls = walls.clone();
+        this.objectMasks = objectMasks.clone();
+        this.objectCells = objectCells.clone();
+        long h = 0;
+        for (int c : walls) h ^= cellKey(c);
+        this.wallHash = h;
+    }
+
+    // shares the (immutable) walls of base
+    private Layout(Layout base, int agentCell, int[] objectMasks, int[] objectCells) {
+        if (objectMasks.length != objectCells.length) throw new IllegalArgumentException("object masks/cells mismatch");
+        this.width = base.width;
+        this.height = base.height;
+        this.agentCell = agentCell;
+        this.walls = base.walls;
+        this.wallHash = base.wallHash;
+        this.objectMasks = objectMasks.clone();
+        this.objectCells = objectCells.clone();
+    }
+
+    public int width()  { return width; }
+    public int height() { return height; }
+    public int agentX() { return agentCell % width; }
+    public int agentY() { return agentCell / width; }
+    int agentCell()     { return agentCell; }
+
+    int wallCount()          { return walls.length; }
+    int wallCell(int i)      { return walls[i]; }
+    int objectCount()        { return objectMasks.length; }
+    int objectMask(int i)    { return objectMasks[i]; }
+    int objectCell(int i)    { return objectCells[i]; }
+
+    // Zobrist hash of the walls: XOR of cellKey over the wall cells. GridModel keeps the same hash of its
+    // live obstacles up to date one cell at a time, so the two compare equal for the same walls.
+    long wallHash() {
+        return wallHash;
+    }
+
+    // pseudo-random 64-bit key of a cell
+    static long cellKey(int c) {
+        return mix((c + 1) * 0x9E3779B97F4A7C15L);
+    }
+
+    // SplitMix64 finalizer; also folds further fields into a layout hash: h = mix(h * 31 + v)
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // same size, agent start and walls with other objects
+    Layout withObjects(int[] masks, int[] cells) {
+        return new Layout(this, agentCell, masks, cells);
+    }
+
+    // same size and walls with another agent start and other objects
+    Layout withStart(int agentCell, int[] masks, int[] cells) {
+        if (agentCell < 0 || agentCell >= width * height) throw new IllegalArgumentException("agent start outside the layout: " + agentCell);
+        return new Layout(this, agentCell, masks, cells);
+    }
+
+    // The fixed 5x5 layout of the assignment PDF
+    public static Layout pdf() {
+        int w = GridEnv.WIDTH, h = GridEnv.HEIGHT;
+        // PDF (1-based, bottom-left) -> cell index
+        IntBinaryOperator at = (X, Y) -> (h - Y) * w + (X - 1);
+
+        // walls (PDF): (2,1), (2,2), (4,4), (4,5)
+        int[] walls = {at.applyAsInt(2, 1), at.applyAsInt(2, 2), at.applyAsInt(4, 4), at.applyAsInt(4, 5)};
+
+        // objects (fixed positions)
+        int[] masks = {GridEnv.BRUSH, GridEnv.KEY, GridEnv.CODE, GridEnv.COLOR, GridEnv.CHAIR, GridEnv.DOOR, GridEnv.TABLE};
+        int[] cells = {at.applyAsInt(1, 5), at.applyAsInt(1, 4), at.applyAsInt(3, 5), at.applyAsInt(5, 5),
+                       at.applyAsInt(4, 2), at.applyAsInt(3, 1), at.applyAsInt(5, 1)};
+
+        return new Layout(w, h, at.applyAsInt(1, 1), walls, masks, cells);
+    }
+
+    /**
+     * Layout from a spec string:
+     * "pdf" (or empty), "random:WxH:density:seed" for a generated layout, or a path to a layout file.
+     */
+    public static Layout fromSpec(String spec) throws IOException {
+        if (spec == null || spec.isBlank() || spec.trim().equalsIgnoreCase("pdf")) return pdf();
+        spec = spec.trim();
+        if (spec.startsWith("random:")) {
+            String[] p = spec.substring("random:".length()).split(":");
+            String[] size = p[0].toLowerCase().split("x");
+            int w = Integer.parseInt(size[0]);
+            int h = size.length > 1 ? Integer.parseInt(size[1]) : w;
+            double density = p.length > 1 ? Double.parseDouble(p[1]) : 0.2;
+            long seed = p.length > 2 ? Long.parseLong(p[2]) : 0L;
+            return LayoutGenerator.generate(seed, w, h, density);
+        }
+        return load(Paths.get(spec));
+    }
+
+    public static Layout load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public static Layout parse(List<String> lines) {
+        List<String> rows = new ArrayList<>();
+        for (String line : lines) {
+            String t = line.trim();
+            if (t.isEmpty() || t.startsWith(";")) continue;
+            rows.add(expand(t));
+        }
+        if (rows.isEmpty()) throw new IllegalArgumentException("empty layout");
+
+        int h = rows.size(), w = rows.get(0).length();
+        int agent = -1;
+        List<Integer> walls = new ArrayList<>();
+        List<Integer> masks = new ArrayList<>();
+        List<Integer> cells = new ArrayList<>();
+        for (int y = 0; y < h; y++) {
+            String r = rows.get(y);
+            if (r.length() != w) throw new IllegalArgumentException("row " + (y + 1) + " has " + r.length() + " cells, expected " + w);
+            for (int x = 0; x < w; x++) {
+                char ch = r.charAt(x);
+                int c = y * w + x;
+                if (ch == '.') continue;
+                if (ch == '#') { walls.add(c); continue; }
+                if (ch == 'A') { agent = c; continue; }
+                int m = maskOf(ch);
+                if (m == 0) throw new IllegalArgumentException("unknown layout symbol '" + ch + "' at row " + (y + 1));
+                masks.add(m);
+                cells.add(c);
+            }
+        }
+        if (agent < 0) throw new IllegalArgumentException("layout has no agent start 'A'");
+        return new Layout(w, h, agent, toArray(walls), toArray(masks), toArray(cells));
+    }
+
+    // run-length encoded rows, parseable by parse()
+    public String format() {
+        char[] grid = new char[width * height];
+        Arrays.fill(grid, '.');
+        for (int c : walls) grid[c] = '#';
+        for (int i = 0; i < objectMasks.length; i++) grid[objectCells[i]] = symbolOf(objectMasks[i]);
+        grid[agentCell] = 'A';
+
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                char ch = grid[y * width + x];
+                int run = 1;
+                while (x + run < width && grid[y * width + x + run] == ch) run++;
+                if (run > 2) sb.append(run);
+                else if (run == 2) sb.append(ch);
+                sb.append(ch);
+                x += run;
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Layout(" + width + "x" + height + ", walls=" + walls.length + ", objects=" + objectMasks.length + ")";
+    }
+
+    private static String expand(String row) {
+        StringBuilder sb = new StringBuilder(row.length());
+        int count = 0;
+        for (int i = 0; i < row.length(); i++) {
+            char ch = row.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                count = count * 10 + (ch - '0');
+                continue;
+            }
+            if (Character.isWhitespace(ch)) continue;
+            for (int k = Math.max(1, count); k > 0; k--) sb.append(ch);
+            count = 0;
+        }
+        return sb.toString();
+    }
+
+    static int maskOf(char ch) {
+        for (int i = 0; i < SYMBOLS.length; i++) if (SYMBOLS[i] == ch) return MASKS[i];
+        return 0;
+    }
+
+    private static char symbolOf(int mask) {
+        for (int i = 0; i < MASKS.length; i++) if (MASKS[i] == mask) return SYMBOLS[i];
+        return '?';
+    }
+
+    private static int[] toArray(List<Integer> l) {
+        int[] a = new int[l.size()];
+        for (int i = 0; i < a.length; i++) a[i] = l.get(i);
+        return a;
+    }
+}
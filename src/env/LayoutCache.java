@@ -0,0 +1,78 @@
+package env;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+//Bounded LRU of structures derived from an obstacle layout (blocked grid, BFS distance fields, mission
+//planner tables), keyed by the layout's wall hash (GridModel.wallHash, Layout.wallHash). A run that keeps
+//coming back to the same walls, e.g. with per-episode object randomization, builds each structure once.
+//Values are built under the cache lock, so two threads never build the same entry. Caches of values
+//whose size grows with the layout also cap their total weight (e.g. ints held), evicting least recently
+//used entries until it fits; the newest entry always stays.
+
+final class LayoutCache<V> {
+
+    private final String name;
+    private final Map<Long, V> entries;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private long hits, misses, weight;
+
+    LayoutCache(String name, int capacity) {
+        this(name, capacity, Long.MAX_VALUE, v -> 0);
+    }
+
+    // at most capacity entries and maxWeight total weight
+    LayoutCache(String name, int capacity, long maxWeight, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.entries = new LinkedHashMap<Long, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> e) {
+                if (size() <= capacity) return false;
+                weight -= weigher.applyAsLong(e.getValue());
+                return true;
+            }
+        };
+    }
+
+    synchronized V get(long key, LongFunction<V> build) {
+        V v = entries.get(key);
+        if (v != null) {
+            hits++;
+            return v;
+        }
+        misses++;
+        v = build.apply(key);
+        weight += weigher.applyAsLong(v);
+        entries.put(key, v);
+        for (Iterator<V> it = entries.values().iterator(); weight > maxWeight && entries.size() > 1; ) {
+            weight -= weigher.applyAsLong(it.next());
+            it.remove();
+        }
+        return v;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    synchronized long hits()   { return hits; }
+    synchronized long misses() { return misses; }
+
+    synchronized double hitRate() {
+        long n = hits + misses;
+        return n == 0 ? 0.0 : (double) hits / n;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s(entries=%d, hits=%d, misses=%d, hit rate %.1f%%)",
+                name, entries.size(), hits, misses, 100 * hitRate());
+    }
+}
@@ -0,0 +1,201 @@
+package env;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+//Procedural layouts for stress tests: random walls at a given density, then every free cell that is
+//not in the largest connected region is walled off, so all free cells (and therefore the agent and
+//every object) are mutually reachable. The agent and the seven objects go on distinct free cells.
+//Shuffler re-places some objects of an existing layout per episode, keeping its walls and agent start.
+
+final class LayoutGenerator {
+
+    private static final int[] OBJECTS = {GridEnv.BRUSH, GridEnv.KEY, GridEnv.CODE, GridEnv.COLOR,
+                                          GridEnv.TABLE, GridEnv.CHAIR, GridEnv.DOOR};
+    private static final int MAX_ATTEMPTS = 16;
+
+    private LayoutGenerator() {}
+
+    /**
+     * @param seed    same seed, size and density always give the same layout
+     * @param width   1..Layout.MAX_SIZE
+     * @param height  1..Layout.MAX_SIZE
+     * @param density probability that a cell starts as a wall, 0 <= density < 1
+     */
+    static Layout generate(long seed, int width, int height, double density) {
+        if (width < 1 || height < 1 || width > Layout.MAX_SIZE || height > Layout.MAX_SIZE) {
+            throw new IllegalArgumentException("layout size must be 1.." + Layout.MAX_SIZE + ", got " + width + "x" + height);
+        }
+        if (density < 0 || density >= 1) throw new IllegalArgumentException("density must be in [0,1): " + density);
+        int cells = width * height;
+        int needed = OBJECTS.length + 1;
+        if (cells < needed) throw new IllegalArgumentException("layout needs at least " + needed + " cells");
+
+        SplittableRandom rng = new SplittableRandom(seed);
+        boolean[] wall = new boolean[cells];
+        int[] region = new int[cells];
+        int[] queue = new int[cells];
+
+        for (int attempt = 0; ; attempt++) {
+            // the last attempt has no walls, which is always connected
+            double d = attempt < MAX_ATTEMPTS ? density : 0.0;
+            for (int c = 0; c < cells; c++) wall[c] = rng.nextDouble() < d;
+
+            int best = largestRegion(wall, width, height, region, queue);
+            int free = 0;
+            for (int c = 0; c < cells; c++) {
+                if (!wall[c] && region[c] != best) wall[c] = true;
+                if (!wall[c]) free++;
+            }
+            if (free >= needed) return place(rng, wall, width, height, free);
+        }
+    }
+
+    /**
+     * Per-episode object placement on fixed walls: next(seed) moves the objects selected by mask to
+     * distinct random cells reachable from the agent start, away from the agent and the other objects.
+     * The same seed always gives the same layout; the walls are shared with the base layout.
+     */
+    static final class Shuffler {
+        private final Layout base;
+        private final int mask;
+        private final int[] reachable; // free cells reachable from the agent start, minus the agent start
+        private final int[] masks, cells;
+        private final boolean[] fixed;   // reachable index -> held by an object that stays put
+        private final int[] index;       // cell -> reachable index, -1 elsewhere
+
+        Shuffler(Layout base, int mask) {
+            this.base = base;
+            this.mask = mask;
+            int w = base.width(), n = w * base.height();
+            boolean[] wall = new boolean[n];
+            for (int i = 0; i < base.wallCount(); i++) wall[base.wallCell(i)] = true;
+
+            int[] queue = new int[n];
+            boolean[] seen = wall.clone();
+            int head = 0, tail = 0;
+            queue[tail++] = base.agentCell();
+            seen[base.agentCell()] = true;
+            while (head < tail) {
+                int c = queue[head++];
+                int x = c % w, y = c / w;
+                if (x > 0     && !seen[c - 1]) { seen[c - 1] = true; queue[tail++] = c - 1; }
+                if (x < w - 1 && !seen[c + 1]) { seen[c + 1] = true; queue[tail++] = c + 1; }
+                if (y > 0     && !seen[c - w]) { seen[c - w] = true; queue[tail++] = c - w; }
+                if (c + w < n && !seen[c + w]) { seen[c + w] = true; queue[tail++] = c + w; }
+            }
+            reachable = Arrays.copyOfRange(queue, 1, tail);
+            index = new int[n];
+            Arrays.fill(index, -1);
+            for (int i = 0; i < reachable.length; i++) index[reachable[i]] = i;
+
+            masks = new int[base.objectCount()];
+            cells = new int[base.objectCount()];
+            fixed = new boolean[reachable.length];
+            int moving = 0;
+            for (int i = 0; i < masks.length; i++) {
+                masks[i] = base.objectMask(i);
+                cells[i] = base.objectCell(i);
+                if ((masks[i] & mask) != 0) moving++;
+                else if (index[cells[i]] >= 0) fixed[index[cells[i]]] = true;
+            }
+            int room = reachable.length;
+            for (boolean f : fixed) if (f) room--;
+            if (room < moving) throw new IllegalArgumentException("no room to place " + moving + " objects in " + base);
+        }
+
+        Layout base() { return base; }
+
+        // layout of episode k (0-based) of a run: pool > 0 cycles through pool layouts
+        Layout forEpisode(long seed, int k, int pool) {
+            return next(seed + 0x9E3779B97F4A7C15L * (pool > 0 ? k % pool : k));
+        }
+
+        Layout next(long seed) {
+            SplittableRandom rng = new SplittableRandom(seed);
+            int[] out = cells.clone();
+            int[] taken = new int[masks.length];
+            int nTaken = 0;
+            for (int i = 0; i < masks.length; i++) {
+                if ((masks[i] & mask) == 0) continue;
+                int c;
+                do {
+                    c = reachable[rng.nextInt(reachable.length)];
+                } while (fixed[index[c]] || contains(taken, nTaken, c));
+                out[i] = c;
+                taken[nTaken++] = c;
+            }
+            return base.withObjects(masks, out);
+        }
+
+        private static boolean contains(int[] a, int n, int v) {
+            for (int i = 0; i < n; i++) if (a[i] == v) return true;
+            return false;
+        }
+    }
+
+    // objects a randomize spec moves: none, fixed (table, chair, door), all, or layout symbols ("TDH")
+    static int objectMask(String spec) {
+        String s = spec.trim();
+        if (s.isEmpty() || s.equalsIgnoreCase("none")) return 0;
+        if (s.equalsIgnoreCase("fixed")) return GridEnv.TABLE | GridEnv.CHAIR | GridEnv.DOOR;
+        if (s.equalsIgnoreCase("all")) {
+            int all = 0;
+            for (int m : OBJECTS) all |= m;
+            return all;
+        }
+        int mask = 0;
+        for (char ch : s.toCharArray()) {
+            int m = Layout.maskOf(Character.toUpperCase(ch));
+            if (m == 0) throw new IllegalArgumentException("unknown object symbol '" + ch + "' in randomize=" + spec);
+            mask |= m;
+        }
+        return mask;
+    }
+
+    // labels 4-connected free regions (1..n) and returns the label of the largest one
+    private static int largestRegion(boolean[] wall, int w, int h, int[] region, int[] queue) {
+        Arrays.fill(region, 0);
+        int label = 0, best = 0, bestSize = 0;
+        for (int s = 0; s < wall.length; s++) {
+            if (wall[s] || region[s] != 0) continue;
+            label++;
+            int head = 0, tail = 0;
+            region[s] = label;
+            queue[tail++] = s;
+            while (head < tail) {
+                int c = queue[head++];
+                int x = c % w, y = c / w;
+                if (x > 0     && !wall[c - 1] && region[c - 1] == 0) { region[c - 1] = label; queue[tail++] = c - 1; }
+                if (x < w - 1 && !wall[c + 1] && region[c + 1] == 0) { region[c + 1] = label; queue[tail++] = c + 1; }
+                if (y > 0     && !wall[c - w] && region[c - w] == 0) { region[c - w] = label; queue[tail++] = c - w; }
+                if (y < h - 1 && !wall[c + w] && region[c + w] == 0) { region[c + w] = label; queue[tail++] = c + w; }
+            }
+            if (tail > bestSize) {
+                bestSize = tail;
+                best = label;
+            }
+        }
+        return best;
+    }
+
+    // agent + objects on distinct free cells (partial Fisher-Yates over the free cells)
+    private static Layout place(SplittableRandom rng, boolean[] wall, int w, int h, int free) {
+        int[] freeCells = new int[free];
+        int nWalls = wall.length - free;
+        int[] walls = new int[nWalls];
+        for (int c = 0, f = 0, k = 0; c < wall.length; c++) {
+            if (wall[c]) walls[k++] = c;
+            else freeCells[f++] = c;
+        }
+        for (int i = 0; i <= OBJECTS.length; i++) {
+            int j = i + rng.nextInt(free - i);
+            int t = freeCells[i];
+            freeCells[i] = freeCells[j];
+            freeCells[j] = t;
+        }
+        int[] cells = new int[OBJECTS.length];
+        System.arraycopy(freeCells, 1, cells, 0, OBJECTS.length);
+        return new Layout(w, h, freeCells[0], walls, OBJECTS, cells);
+    }
+}
@@ -0,0 +1,190 @@
+package env;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Atom;
+import jason.asSyntax.Literal;
+import jason.asSyntax.StringTerm;
+import jason.asSyntax.Term;
+
+//Pre-built percept literals and action-token lookup tables for GridEnv.
+//Percepts are built from terms (no string concatenation + parsing); per-cell pos/at/wall literals are
+//created once per layout size on first use, counters and rewards are cached by value.
+//Action arguments resolve to object masks / directions through atom-keyed tables.
+//Shared by all agents of a GridEnv: per-cell literals sit in atomic arrays, counters and rewards
+//are cached under the pool's lock.
+
+final class LiteralPool {
+
+    // ===== action tokens =====
+
+    static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+    static final int[] DX = {0, 0, -1, 1}; // internal coords: up is y - 1
+    static final int[] DY = {-1, 1, 0, 0};
+
+    // object masks in percept order, with their percept symbols
+    private static final int[]    OBJECTS = {GridEnv.BRUSH, GridEnv.KEY, GridEnv.CODE, GridEnv.COLOR,
+                                             GridEnv.TABLE, GridEnv.CHAIR, GridEnv.DOOR};
+    private static final String[] SYMBOLS = {"b", "k", "cd", "cl", "t", "ch", "d"};
+    private static final String[] NAMES   = {"brush", "key", "code", "color", "table", "chair", "door"};
+
+    private static final Map<Atom, Integer>   OBJECT_ATOMS = new HashMap<>();
+    private static final Map<String, Integer> OBJECT_NAMES = new HashMap<>();
+    private static final Map<Atom, Integer>   DIR_ATOMS    = new HashMap<>();
+    private static final Map<String, Integer> DIR_NAMES    = new HashMap<>();
+
+    static {
+        for (int i = 0; i < OBJECTS.length; i++) {
+            OBJECT_ATOMS.put(new Atom(SYMBOLS[i]), OBJECTS[i]);
+            OBJECT_ATOMS.put(new Atom(NAMES[i]), OBJECTS[i]);
+            OBJECT_NAMES.put(SYMBOLS[i], OBJECTS[i]);
+            OBJECT_NAMES.put(NAMES[i], OBJECTS[i]);
+        }
+        DIR_ATOMS.put(PathCache.UP, UP);
+        DIR_ATOMS.put(PathCache.DOWN, DOWN);
+        DIR_ATOMS.put(PathCache.LEFT, LEFT);
+        DIR_ATOMS.put(PathCache.RIGHT, RIGHT);
+        DIR_NAMES.put("up", UP);
+        DIR_NAMES.put("down", DOWN);
+        DIR_NAMES.put("left", LEFT);
+        DIR_NAMES.put("right", RIGHT);
+    }
+
+    // object mask named by an action argument (b, brush, "T", ...), 0 if unknown
+    static int objectMask(Term t) {
+        Integer m = t instanceof Atom ? OBJECT_ATOMS.get(t) : null;
+        if (m == null) m = OBJECT_NAMES.get(text(t));
+        return m == null ? 0 : m;
+    }
+
+    // short action/percept symbol (b, k, cd, ...) of an object mask
+    static Atom symbol(int mask) {
+        return new Atom(SYMBOLS[slot(mask)]);
+    }
+
+    // direction index (UP, DOWN, LEFT, RIGHT) named by an action argument, -1 if unknown
+    static int direction(Term t) {
+        Integer d = t instanceof Atom ? DIR_ATOMS.get(t) : null;
+        if (d == null) d = DIR_NAMES.get(text(t));
+        return d == null ? -1 : d;
+    }
+
+    // slow path for strings and odd casing; the tables above cover what the ASL sends
+    private static String text(Term t) {
+        String s = t instanceof StringTerm ? ((StringTerm) t).getString() : t.toString();
+        return s.replace("\"", "").toLowerCase();
+    }
+
+    // ===== percepts =====
+
+    static final Literal MAX_CARRY          = ASSyntax.createLiteral("max_carry", ASSyntax.createNumber(GridEnv.GridModel.MAX_CARRY));
+    static final Literal COLORED_TABLE      = ASSyntax.createLiteral("colored", new Atom("table"));
+    static final Literal COLORED_CHAIR      = ASSyntax.createLiteral("colored", new Atom("chair"));
+    static final Literal DOOR_OPEN          = ASSyntax.createLiteral("door", new Atom("open"));
+    static final Literal DOOR_CLOSED        = ASSyntax.createLiteral("door", new Atom("closed"));
+    static final Literal EXPERIMENT_RUNNING = ASSyntax.createLiteral("experiment", new Atom("running"));
+
+    private static final int MAX_REWARDS = 256;
+    private static final int MAX_COUNTER = 1 << 16; // step/episode values cached below this
+
+    private final GridEnv.GridModel model;
+    private final AtomicReferenceArray<Literal> pos;
+    private final AtomicReferenceArray<Literal> wall;
+    private final AtomicReferenceArray<AtomicReferenceArray<Literal>> at = new AtomicReferenceArray<>(OBJECTS.length);
+    private final Literal[] have = new Literal[OBJECTS.length];
+    private final Literal[] carrying = new Literal[GridEnv.GridModel.MAX_CARRY + 2];
+    private Literal[] steps = new Literal[256];
+    private Literal[] episodes = new Literal[128];
+    private final Map<Double, Literal> rewards = new HashMap<>();
+
+    LiteralPool(GridEnv.GridModel model) {
+        this.model = model;
+        int cells = model.getWidth() * model.getHeight();
+        this.pos = new AtomicReferenceArray<>(cells);
+        this.wall = new AtomicReferenceArray<>(cells);
+        for (int s = 0; s < OBJECTS.length; s++) have[s] = ASSyntax.createLiteral("have", new Atom(SYMBOLS[s]));
+        for (int n = 0; n < carrying.length; n++) carrying[n] = ASSyntax.createLiteral("carrying_count", ASSyntax.createNumber(n));
+    }
+
+    // pos(X,Y) for internal cell (x,y)
+    Literal pos(int x, int y) {
+        int c = y * model.getWidth() + x;
+        Literal l = pos.get(c);
+        if (l == null) pos.lazySet(c, l = ASSyntax.createLiteral("pos", px(x), py(y)));
+        return l;
+    }
+
+    // wall(X,Y) for internal cell (x,y)
+    Literal wall(int x, int y) {
+        int c = y * model.getWidth() + x;
+        Literal l = wall.get(c);
+        if (l == null) wall.lazySet(c, l = ASSyntax.createLiteral("wall", px(x), py(y)));
+        return l;
+    }
+
+    // at(Symbol,X,Y) for an object mask at internal cell (x,y)
+    Literal at(int mask, int x, int y) {
+        int s = slot(mask);
+        AtomicReferenceArray<Literal> row = at.get(s);
+        if (row == null) {
+            at.compareAndSet(s, null, new AtomicReferenceArray<>(pos.length()));
+            row = at.get(s);
+        }
+        int c = y * model.getWidth() + x;
+        Literal l = row.get(c);
+        if (l == null) row.lazySet(c, l = ASSyntax.createLiteral("at", new Atom(SYMBOLS[s]), px(x), py(y)));
+        return l;
+    }
+
+    // have(Symbol) for a carried item mask
+    Literal have(int mask) {
+        return have[slot(mask)];
+    }
+
+    Literal carryingCount(int n) {
+        if (n < 0 || n >= carrying.length) return ASSyntax.createLiteral("carrying_count", ASSyntax.createNumber(n));
+        return carrying[n];
+    }
+
+    synchronized Literal step(int n) {
+        if (n < 0 || n >= MAX_COUNTER) return ASSyntax.createLiteral("step", ASSyntax.createNumber(n));
+        Literal[] a = steps;
+        if (n >= a.length) a = steps = Arrays.copyOf(a, Math.min(MAX_COUNTER, Math.max(n + 1, a.length * 2)));
+        Literal l = a[n];
+        if (l == null) l = a[n] = ASSyntax.createLiteral("step", ASSyntax.createNumber(n));
+        return l;
+    }
+
+    synchronized Literal episode(int n) {
+        if (n < 0 || n >= MAX_COUNTER) return ASSyntax.createLiteral("episode", ASSyntax.createNumber(n));
+        Literal[] a = episodes;
+        if (n >= a.length) a = episodes = Arrays.copyOf(a, Math.min(MAX_COUNTER, Math.max(n + 1, a.length * 2)));
+        Literal l = a[n];
+        if (l == null) l = a[n] = ASSyntax.createLiteral("episode", ASSyntax.createNumber(n));
+        return l;
+    }
+
+    // rewards only take a handful of distinct values per layout
+    synchronized Literal reward(double r) {
+        Literal l = rewards.get(r);
+        if (l == null) {
+            l = ASSyntax.createLiteral("reward", ASSyntax.createNumber(r));
+            if (rewards.size() < MAX_REWARDS) rewards.put(r, l);
+        }
+        return l;
+    }
+
+    private Term px(int x) { return ASSyntax.createNumber(model.px(x)); }
+    private Term py(int y) { return ASSyntax.createNumber(model.py(y)); }
+
+    private static int slot(int mask) {
+        for (int i = 0; i < OBJECTS.length; i++) {
+            if (OBJECTS[i] == mask) return i;
+        }
+        throw new IllegalArgumentException("not an object mask: " + mask);
+    }
+}
@@ -0,0 +1,241 @@
+package env;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jason.architecture.AgArch;
+import jason.asSemantics.ActionExec;
+import jason.asSemantics.Agent;
+import jason.asSemantics.TransitionSystem;
+import jason.asSyntax.Literal;
+import jason.runtime.Settings;
+
+//Runs K independent copies of the MAS (the same BDI agents on their own GridEnv) in one JVM, without the
+//Jason infrastructure or any GUI. Every agent reasons on its own virtual thread; Arch hands its percepts
+//and actions straight to the instance's GridEnv, and internal actions find that environment through
+//GridEnv.modelOf. An episode ends when all agents of the instance are idle and nothing was executed since
+//they last perceived (or each hit --max-cycles); its utility is GridEnv's (100 per goal - steps), then the
+//instance starts the next episode with fresh agents. Utilities are aggregated over all instances.
+//Init args given with --env go to every GridEnv; randomize.seed is offset by the instance number and the
+//trace, results and metrics files get a -<instance> suffix so instances never share a file.
+//
+// usage: MasBatch [--instances K] [--episodes N] [--asl file] [--agents spec] [--max-cycles C]
+//                 [--env key=value]...   (defaults: one instance per core, 10 episodes, main_agent.asl,
+//                                         agents main_agent, 10000 cycles)
+
+public final class MasBatch {
+
+    private static final long BUSY = -1, DONE = -2;
+    private static final long POLL_MS = 20; // bounds a missed wake-up; waits normally end on a signal
+
+    public static void main(String[] args) throws Exception {
+        int instances = Runtime.getRuntime().availableProcessors(), episodes = 10, maxCycles = 10_000;
+        String asl = "main_agent.asl", agents = GridEnv.AG_NAME;
+        List<String> envArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--instances":  instances = Integer.parseInt(args[++i]); break;
+                case "--episodes":   episodes = Integer.parseInt(args[++i]);  break;
+                case "--asl":        asl = args[++i];                         break;
+                case "--agents":     agents = args[++i];                      break;
+                case "--max-cycles": maxCycles = Integer.parseInt(args[++i]); break;
+                case "--env":        envArgs.add(args[++i]);                  break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        System.out.println("Running " + instances + " MAS instance(s) x " + episodes + " episodes of " + asl
+                + " on virtual threads, env " + envArgs);
+        long t0 = System.nanoTime();
+        List<Future<double[]>> runs = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int k = 0; k < instances; k++) {
+                Instance inst = new Instance(k, instanceArgs(envArgs, agents, k), asl, maxCycles);
+                int n = episodes;
+                runs.add(pool.submit(() -> inst.run(n)));
+            }
+        }
+
+        // aggregated in instance order, so the summary does not depend on which instance finished first
+        EpisodeStats stats = new EpisodeStats();
+        for (int k = 0; k < instances; k++) {
+            double[] u = runs.get(k).get();
+            EpisodeStats s = new EpisodeStats();
+            for (double x : u) {
+                s.add(x);
+                stats.add(x);
+            }
+            System.out.println("instance " + k + ": " + s);
+        }
+        double secs = (System.nanoTime() - t0) / 1e9;
+        System.out.println("Average utility over " + stats.count() + " episodes = " + stats.sum() / Math.max(1, stats.count()));
+        System.out.println("Utility: " + stats);
+        System.out.printf("%.3f s, %.1f episodes/s%n", secs, stats.count() / secs);
+    }
+
+    // the shared init args made per instance: headless, the agents, own seed and output files
+    static String[] instanceArgs(List<String> envArgs, String agents, int k) {
+        String[] given = envArgs.toArray(new String[0]);
+        List<String> out = new ArrayList<>();
+        out.add("headless=true");
+        out.add("agents=" + GridEnv.initArg(given, "agents", agents));
+        out.add("randomize.seed=" + (Long.parseLong(GridEnv.initArg(given, "randomize.seed", "0")) + k));
+        for (String key : new String[] {"trace", "results", "metrics"}) {
+            String f = GridEnv.initArg(given, key, "");
+            if (!f.isEmpty()) out.add(key + "=" + suffixed(f, k));
+        }
+        out.addAll(envArgs); // initArg takes the first match, so the per-instance values above win
+        return out.toArray(new String[0]);
+    }
+
+    private static String suffixed(String file, int k) {
+        int dot = file.lastIndexOf('.');
+        int slash = Math.max(file.lastIndexOf('/'), file.lastIndexOf('\\'));
+        return dot > slash ? file.substring(0, dot) + "-" + k + file.substring(dot) : file + "-" + k;
+    }
+
+    // one GridEnv and its agents; run() is the instance's coordinator
+    private static final class Instance {
+        final int id;
+        final GridEnv env = new GridEnv();
+        final String[] args;
+        final String asl;
+        final int maxCycles;
+
+        final AtomicLong actions = new AtomicLong(); // actions executed in this instance so far
+        final Semaphore settled = new Semaphore(0);  // an agent went idle or finished
+        volatile boolean episodeOver;
+        volatile Arch[] archs = new Arch[0];
+
+        Instance(int id, String[] args, String asl, int maxCycles) {
+            this.id = id;
+            this.args = args;
+            this.asl = asl;
+            this.maxCycles = maxCycles;
+        }
+
+        double[] run(int episodes) throws Exception {
+            env.init(args);
+            try {
+                String[] names = GridEnv.agentNames(GridEnv.initArg(args, "agents", GridEnv.AG_NAME));
+                double[] utilities = new double[episodes];
+                for (int ep = 0; ep < episodes; ep++) utilities[ep] = episode(names);
+                return utilities;
+            } finally {
+                env.stop();
+            }
+        }
+
+        private double episode(String[] names) throws Exception {
+            Arch[] as = new Arch[names.length];
+            for (int i = 0; i < as.length; i++) {
+                as[i] = new Arch(this, names[i]);
+                Agent.create(as[i], Agent.class.getName(), null, asl, new Settings());
+            }
+            archs = as;
+            episodeOver = false;
+            Thread[] threads = new Thread[as.length];
+            for (int i = 0; i < as.length; i++) {
+                threads[i] = Thread.ofVirtual().name(names[i] + "@" + id).start(as[i]::reason);
+            }
+
+            while (!quiescent(as)) settled.tryAcquire(POLL_MS, TimeUnit.MILLISECONDS);
+            episodeOver = true;
+            for (Arch a : as) a.wake();
+            for (Thread t : threads) t.join();
+            for (Arch a : as) a.getTS().getAg().stopAg();
+            settled.drainPermits();
+            return env.endEpisode();
+        }
+
+        // every agent is idle since the last executed action, or done
+        private boolean quiescent(Arch[] as) {
+            long now = actions.get();
+            for (Arch a : as) {
+                long s = a.idleSince;
+                if (s != DONE && s != now) return false;
+            }
+            return true;
+        }
+
+        void executed(Arch by) {
+            actions.incrementAndGet();
+            for (Arch a : archs) if (a != by) a.wake();
+        }
+    }
+
+    // Agent architecture of a batch agent: perceives from and acts on its instance's GridEnv directly
+    static final class Arch extends AgArch {
+        private final Instance inst;
+        private final String name;
+        private final Semaphore signal = new Semaphore(0);
+        volatile long idleSince = BUSY; // Instance.actions when the agent went idle, BUSY or DONE
+
+        Arch(Instance inst, String name) {
+            this.inst = inst;
+            this.name = name;
+        }
+
+        GridEnv env() {
+            return inst.env;
+        }
+
+        // reasoning loop on the agent's virtual thread, until the episode ends or the cycle budget is spent
+        void reason() {
+            TransitionSystem ts = getTS();
+            int cycles = 0;
+            while (!inst.episodeOver) {
+                long seen = inst.actions.get();
+                ts.reasoningCycle();
+                if (++cycles >= inst.maxCycles) break;
+                if (!ts.canSleep()) continue;
+                idleSince = seen;
+                inst.settled.release();
+                try {
+                    signal.tryAcquire(POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                signal.drainPermits();
+                idleSince = BUSY;
+            }
+            idleSince = DONE;
+            inst.settled.release();
+        }
+
+        @Override
+        public String getAgName() {
+            return name;
+        }
+
+        @Override
+        public Collection<Literal> perceive() {
+            return inst.env.getPercepts(name);
+        }
+
+        @Override
+        public void act(ActionExec action) {
+            action.setResult(inst.env.executeAction(name, action.getActionTerm()));
+            inst.executed(this);
+            getTS().getC().addFeedbackAction(action);
+        }
+
+        @Override
+        public boolean isRunning() {
+            return !inst.episodeOver;
+        }
+
+        @Override
+        public void wake() {
+            if (signal.availablePermits() == 0) signal.release();
+        }
+    }
+}
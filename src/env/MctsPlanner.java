@@ -0,0 +1,372 @@
+package env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Root-parallel UCT over SimKernel states: every worker grows its own tree from the same root for the
+//time budget, then the root statistics are summed and the most visited action wins. Values are undiscounted
+//sums of kernel rewards (GridEnv.executeAction's rewards, carrying reward included) up to a horizon.
+//Only actions that change the kernel position are searched, which also keeps paint/open of a finished
+//target (GridEnv pays those again) out of the tree. Rollouts head for the nearest useful object most of
+//the time: a needed item, a target to paint, the door; random play alone almost never completes anything.
+//One planner per model; the kernel is rebuilt when walls or fixed objects change. The worker pool and the
+//workers' tree arrays are shared by all planners in the JVM: each pool thread keeps its tree and resets it
+//for the next search, so a decision allocates nothing but its result once the arrays have grown.
+//Concurrent searches (several agents, MasBatch instances) split the cores between them, and each worker
+//measures the budget from when it starts, so a search queued behind another still gets its full budget.
+
+final class MctsPlanner {
+
+    static final long DEFAULT_BUDGET_MS = 50;
+    private static final double EXPLORATION = 1.0;
+    private static final double ROLLOUT_EPSILON = 0.2;
+    private static final int MAX_NODES = 1 << 18;    // per worker tree
+    private static final int RETAIN_NODES = 1 << 15; // capacity a worker keeps between searches (~15 MB)
+    private static final int A = SimKernel.ACTIONS;
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final AtomicInteger SEARCHING = new AtomicInteger(); // searches in progress, all planners
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(CORES, r -> {
+                Thread t = new Thread(r, "mcts-worker");
+                t.setDaemon(true);
+                return t;
+            });
+    private static final ThreadLocal<Tree> TREES = ThreadLocal.withInitial(Tree::new);
+
+    static final class Result {
+        final int action;          // SimKernel action, -1 if nothing to do
+        final int[] plan;          // principal variation starting with action
+        final double value;        // mean return of action from the root
+        final long simulations;
+
+        Result(int action, int[] plan, double value, long simulations) {
+            this.action = action;
+            this.plan = plan;
+            this.value = value;
+            this.simulations = simulations;
+        }
+    }
+
+    private SimKernel kernel;
+    private long kernelVersion = -1;
+    private int[] kernelObjects;
+    private final long seed = System.nanoTime();
+    private long calls;
+
+    // best next action for agent ag from budgetMs of search on each of this search's share of the cores
+    Result search(GridEnv.GridModel m, int ag, long budgetMs) throws Exception {
+        SimKernel k;
+        long seedBase;
+        synchronized (this) {
+            k = kernel(m);
+            seedBase = seed + 0x9E3779B97F4A7C15L * ++calls;
+        }
+        long root = k.encode(m, ag, 0);
+        if (k.done(root)) return new Result(-1, new int[0], 0.0, 0);
+
+        int horizon = 4 * (k.width + k.height) + 16;
+        long budget = Math.max(1, budgetMs) * 1_000_000L;
+        List<RootStats> trees = new ArrayList<>();
+        int searching = SEARCHING.incrementAndGet();
+        try {
+            int workers = Math.max(1, CORES / searching);
+            List<Callable<RootStats>> tasks = new ArrayList<>();
+            SplittableRandom master = new SplittableRandom(seedBase);
+            for (int i = 0; i < workers; i++) {
+                SplittableRandom rng = master.split();
+                tasks.add(() -> TREES.get().search(k, root, horizon, rng, System.nanoTime() + budget));
+            }
+            for (Future<RootStats> f : POOL.invokeAll(tasks)) trees.add(f.get());
+        } finally {
+            SEARCHING.decrementAndGet();
+        }
+
+        long[] n = new long[A];
+        double[] w = new double[A];
+        long sims = 0;
+        for (RootStats t : trees) {
+            sims += t.visits;
+            for (int a = 0; a < A; a++) {
+                n[a] += t.n[a];
+                w[a] += t.w[a];
+            }
+        }
+        int best = -1;
+        for (int a = 0; a < A; a++) {
+            if (n[a] > 0 && (best < 0 || n[a] > n[best] || (n[a] == n[best] && w[a] > w[best]))) best = a;
+        }
+        if (best < 0) return new Result(-1, new int[0], 0.0, sims);
+
+        // principal variation from the tree that spent the most on the chosen action
+        RootStats deepest = trees.get(0);
+        for (RootStats t : trees) if (t.n[best] > deepest.n[best]) deepest = t;
+        return new Result(best, deepest.pv[best], w[best] / n[best], sims);
+    }
+
+    // what search() needs from one worker's tree, copied out so the worker can reuse the tree
+    private static final class RootStats {
+        final long visits;
+        final long[] n = new long[A];
+        final double[] w = new double[A];
+        final int[][] pv = new int[A][];
+
+        RootStats(Tree t) {
+            visits = t.visits[0];
+            for (int a = 0; a < A; a++) {
+                n[a] = t.n[a];
+                w[a] = t.w[a];
+                pv[a] = n[a] > 0 ? t.principalVariation(a) : new int[0];
+            }
+        }
+    }
+
+    private SimKernel kernel(GridEnv.GridModel m) {
+        int[] objects = fixedObjects(m);
+        if (kernel == null || kernelVersion != m.layoutVersion || !Arrays.equals(kernelObjects, objects)) {
+            kernel = SimKernel.forModel(m);
+            kernelVersion = m.layoutVersion;
+            kernelObjects = objects;
+        }
+        return kernel;
+    }
+
+    private static int[] fixedObjects(GridEnv.GridModel m) {
+        int[] t = m.objectCells(GridEnv.TABLE), c = m.objectCells(GridEnv.CHAIR), d = m.objectCells(GridEnv.DOOR);
+        int[] out = new int[t.length + c.length + d.length + 3];
+        int i = 0;
+        out[i++] = t.length;
+        for (int x : t) out[i++] = x;
+        out[i++] = c.length;
+        for (int x : c) out[i++] = x;
+        out[i++] = d.length;
+        for (int x : d) out[i++] = x;
+        return out;
+    }
+
+    // one worker's tree in flat arrays; node i's edges live at i * A .. i * A + A - 1
+    private static final class Tree {
+        private SimKernel k;
+        private int horizon;
+        private SplittableRandom rng;
+        private final long[] out = new long[1];
+        private final int[] legal = new int[A];
+
+        private long[] state = new long[1024];
+        private int[] depth = new int[1024];
+        long[] visits = new long[1024];
+        private int[] child = new int[1024 * A];  // -1 unexpanded, -2 not an action here
+        private double[] reward = new double[1024 * A];
+        long[] n = new long[1024 * A];
+        double[] w = new double[1024 * A];
+        private int nodes;
+        private final int[] path = new int[4096];
+
+        // grows a fresh tree from root until deadline, reusing the arrays of earlier searches
+        RootStats search(SimKernel k, long root, int horizon, SplittableRandom rng, long deadline) {
+            this.k = k;
+            this.horizon = horizon;
+            this.rng = rng;
+            nodes = 0;
+            add(root, 0);
+            int iter = 0;
+            do {
+                simulate();
+            } while ((++iter & 15) != 0 || System.nanoTime() < deadline);
+            RootStats stats = new RootStats(this);
+            if (state.length > RETAIN_NODES) resize(RETAIN_NODES);
+            this.k = null;
+            return stats;
+        }
+
+        private void resize(int cap) {
+            state = Arrays.copyOf(state, cap);
+            depth = Arrays.copyOf(depth, cap);
+            visits = Arrays.copyOf(visits, cap);
+            child = Arrays.copyOf(child, cap * A);
+            reward = Arrays.copyOf(reward, cap * A);
+            n = Arrays.copyOf(n, cap * A);
+            w = Arrays.copyOf(w, cap * A);
+        }
+
+        private int add(long s, int d) {
+            if (nodes == state.length) resize(nodes * 2);
+            int id = nodes++;
+            state[id] = s;
+            depth[id] = d;
+            visits[id] = 0;
+            long here = k.position(s);
+            for (int a = 0; a < A; a++) {
+                int e = id * A + a;
+                n[e] = 0; // the arrays are reused between searches
+                w[e] = 0.0;
+                if (k.done(s) || d >= horizon) {
+                    child[e] = -2;
+                    continue;
+                }
+                reward[e] = k.step(s, a, out);
+                child[e] = k.position(out[0]) == here ? -2 : -1;
+            }
+            return id;
+        }
+
+        // one selection / expansion / rollout / backup pass
+        private void simulate() {
+            int node = 0, len = 0;
+            double ret = 0.0;
+            while (true) {
+                visits[node]++;
+                int e = select(node);
+                if (e < 0) break; // terminal or horizon
+                path[len++] = e;
+                ret += reward[e];
+                if (child[e] == -1) {
+                    k.step(state[node], e - node * A, out);
+                    if (nodes < MAX_NODES) {
+                        int c = add(out[0], depth[node] + 1); // add may grow child[]
+                        child[e] = c;
+                        visits[c]++;
+                    }
+                    ret += rollout(out[0], depth[node] + 1);
+                    break;
+                }
+                node = child[e];
+            }
+            // every edge on the path gets the return from its own reward onwards
+            for (int i = 0; i < len; i++) {
+                int e = path[i];
+                n[e]++;
+                w[e] += ret;
+                ret -= reward[e];
+            }
+        }
+
+        // UCT edge of node, trying unexpanded actions first; -1 if node has none
+        private int select(int node) {
+            int base = node * A, best = -1, untried = 0;
+            for (int a = 0; a < A; a++) if (child[base + a] == -1 && n[base + a] == 0) legal[untried++] = a;
+            if (untried > 0) return base + legal[rng.nextInt(untried)];
+
+            double logN = Math.log(Math.max(1, visits[node]));
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int a = 0; a < A; a++) {
+                int e = base + a;
+                if (child[e] == -2) continue;
+                double score = w[e] / n[e] + EXPLORATION * Math.sqrt(logN / n[e]);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = e;
+                }
+            }
+            return best;
+        }
+
+        // return of the rollout policy from s until done or the horizon
+        private double rollout(long s, int d) {
+            double ret = 0.0;
+            for (; d < horizon && !k.done(s); d++) {
+                int a = rng.nextDouble() < ROLLOUT_EPSILON ? randomAction(s) : heuristic(s);
+                if (a < 0) break;
+                ret += k.step(s, a, out);
+                s = out[0];
+            }
+            return ret;
+        }
+
+        private int randomAction(long s) {
+            int count = 0;
+            long here = k.position(s);
+            for (int a = 0; a < A; a++) {
+                k.step(s, a, out);
+                if (k.position(out[0]) != here) legal[count++] = a;
+            }
+            return count == 0 ? -1 : legal[rng.nextInt(count)];
+        }
+
+        // act on the spot when something useful can be done here, else step towards the nearest target
+        private int heuristic(long s) {
+            int cell = k.agent(s), flags = k.flags(s), carried = k.carriedCount(s);
+            boolean paint = (flags & (SimKernel.TABLE_COLORED | SimKernel.CHAIR_COLORED))
+                    != (SimKernel.TABLE_COLORED | SimKernel.CHAIR_COLORED);
+            boolean open = (flags & SimKernel.DOOR_OPEN) == 0;
+            boolean painter = k.carries(s, 0) && k.carries(s, 3);
+            boolean opener = k.carries(s, 1) && k.carries(s, 2);
+
+            if (painter && (flags & SimKernel.TABLE_COLORED) == 0 && k.isTable(cell)) return SimKernel.PAINT_TABLE;
+            if (painter && (flags & SimKernel.CHAIR_COLORED) == 0 && k.isChair(cell)) return SimKernel.PAINT_CHAIR;
+            if (opener && open && k.door() >= 0 && manhattan(cell, k.door()) == 1) return SimKernel.OPEN_DOOR;
+            for (int i = 0; i < SimKernel.ITEMS.length; i++) {
+                if (needed(i, paint, open) && k.item(s, i) == cell && carried < GridEnv.GridModel.MAX_CARRY) {
+                    return SimKernel.PICK + i;
+                }
+            }
+            if (carried == GridEnv.GridModel.MAX_CARRY) {
+                for (int i = 0; i < SimKernel.ITEMS.length; i++) {
+                    if (!k.carries(s, i) || needed(i, paint, open)) continue;
+                    k.step(s, SimKernel.DROP + i, out);
+                    if (k.position(out[0]) != k.position(s)) return SimKernel.DROP + i;
+                }
+            }
+
+            int target = -1, best = DistanceOracle.UNREACHABLE;
+            if (painter) {
+                if ((flags & SimKernel.TABLE_COLORED) == 0) for (int c : k.tableCells()) if (k.distance(cell, c) < best) { best = k.distance(cell, c); target = c; }
+                if ((flags & SimKernel.CHAIR_COLORED) == 0) for (int c : k.chairCells()) if (k.distance(cell, c) < best) { best = k.distance(cell, c); target = c; }
+            }
+            if (opener && open && k.door() >= 0) {
+                for (int m = SimKernel.UP; m <= SimKernel.RIGHT; m++) {
+                    int c = k.neighbour(k.door(), m);
+                    if (c >= 0 && k.distance(cell, c) < best) { best = k.distance(cell, c); target = c; }
+                }
+            }
+            if (carried < GridEnv.GridModel.MAX_CARRY) {
+                for (int i = 0; i < SimKernel.ITEMS.length; i++) {
+                    int c = k.item(s, i);
+                    if (!needed(i, paint, open) || c >= k.cells) continue;
+                    if (k.distance(cell, c) < best) { best = k.distance(cell, c); target = c; }
+                }
+            }
+            if (target < 0 || best == 0) return randomAction(s);
+            for (int m = SimKernel.UP; m <= SimKernel.RIGHT; m++) {
+                int c = k.neighbour(cell, m);
+                if (c >= 0 && k.distance(c, target) == best - 1) return m;
+            }
+            return randomAction(s);
+        }
+
+        private static boolean needed(int item, boolean paint, boolean open) {
+            return item == 0 || item == 3 ? paint : open;
+        }
+
+        private int manhattan(int a, int b) {
+            return Math.abs(a % k.width - b % k.width) + Math.abs(a / k.width - b / k.width);
+        }
+
+        // most visited actions from the root, starting with first
+        int[] principalVariation(int first) {
+            List<Integer> pv = new ArrayList<>();
+            int e = first;
+            while (true) {
+                pv.add(e % A);
+                int node = child[e];
+                if (node < 0) break;
+                int best = -1;
+                for (int a = 0; a < A; a++) {
+                    int c = node * A + a;
+                    if (n[c] > 1 && (best < 0 || n[c] > n[best])) best = c;
+                }
+                if (best < 0) break;
+                e = best;
+            }
+            int[] out = new int[pv.size()];
+            for (int i = 0; i < out.length; i++) out[i] = pv.get(i);
+            return out;
+        }
+    }
+}
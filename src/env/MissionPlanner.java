@@ -0,0 +1,429 @@
+package env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jason.environment.grid.Location;
+
+//Complete mission (table and chair colored, door open) for one agent, by Dijkstra over the
+//composite task state: point of interest x item status (on the map / carried / dropped) x colored/open
+//flags x cells already used for drops. Costs are the negated GridEnv rewards (step reward plus
+//carryingReward after the action); the +1.0 / +0.8 of paint and open are paid exactly once by every
+//complete plan, so they are added back at the end and all edge costs stay non-negative.
+//Moves jump between points of interest (agent start, items, table, chair, free door neighbours) with
+//BFS distances, so the search never touches the grid itself. Distances are kept per wall set (a few
+//recent ones, keyed by GridModel.wallHash); plans are memoized in an LRU keyed by a hash of the walls
+//and the whole start configuration, so layouts that come back between episodes are planned once.
+//Items are only dropped once they are no longer needed, and only on points of interest; a plan never puts
+//a needed item down to pick it up again later. The result is the cheapest plan under that restriction,
+//not an optimal action sequence in general: with per-step carrying penalties, parking an item and
+//fetching it again can occasionally cost less.
+
+final class MissionPlanner {
+
+    // plan operations: kind << 28 | arg, arg is a cell (y * width + x) for MOVE, an object mask otherwise
+    static final int MOVE = 0, PICK = 1, DROP = 2, PAINT = 3, OPEN = 4;
+
+    static int kind(int op) { return op >>> 28; }
+    static int arg(int op)  { return op & 0x0fffffff; }
+    private static int op(int kind, int arg) { return kind << 28 | arg; }
+
+    static final class Plan {
+        final int[] ops;
+        final double reward; // sum of the rewards GridEnv pays for executing ops from the start state
+        final int steps;     // primitive actions (a MOVE counts its cells)
+        final int expanded;  // search states settled
+
+        Plan(int[] ops, double reward, int steps, int expanded) {
+            this.ops = ops;
+            this.reward = reward;
+            this.steps = steps;
+            this.expanded = expanded;
+        }
+    }
+
+    private static final int[] ITEM = {GridEnv.BRUSH, GridEnv.KEY, GridEnv.CODE, GridEnv.COLOR};
+    private static final int B = 0, K = 1, CD = 2, CL = 3;
+    private static final int ON_MAP = 0, CARRIED = 1, GONE = 2;
+    private static final int TABLE_DONE = 1, CHAIR_DONE = 2, DOOR_DONE = 4, ALL_DONE = 7;
+    private static final double BONUS = GridEnv.REWARD_PAINT + GridEnv.REWARD_PAINT + GridEnv.REWARD_OPEN;
+    private static final double STEP = -GridEnv.REWARD_OK;
+    private static final int MAX_MEMO = 256;
+    private static final int MAX_DIST_CELLS = 256; // the pairwise table starts over beyond this
+
+    // negated carryingReward for k carried items
+    private static double carry(int k) {
+        return -GridEnv.rewardForCarrying(k);
+    }
+
+    // ===== per layout caches =====
+
+    // pairwise distances between the cells that were points of interest on one wall set
+    private static final class Tables {
+        int[] distCells = new int[0];
+        final Map<Integer, Integer> distIndex = new HashMap<>();
+        int[][] dist = new int[0][];
+    }
+
+    private static final Plan IMPOSSIBLE = new Plan(new int[0], Double.NaN, 0, 0); // memoized null
+
+    private final LayoutCache<Tables> tables = new LayoutCache<>("missionDistances", 8);
+    private final LayoutCache<Plan> memo = new LayoutCache<>("missionPlans", MAX_MEMO);
+    private long version = -1;
+    private Tables t;
+
+    LayoutCache<Plan> cache() {
+        return memo;
+    }
+
+    // plan for agent ag from the current model state; null if the mission cannot be completed
+    synchronized Plan plan(GridEnv.GridModel m, int ag) {
+        if (version != m.layoutVersion) {
+            version = m.layoutVersion;
+            t = tables.get(m.wallHash, k -> new Tables());
+        }
+        int w = m.getWidth();
+        Location a = m.getAgPos(ag);
+        if (a == null) return null;
+
+        int[] status = new int[ITEM.length];
+        int[] itemCell = new int[ITEM.length];
+        for (int i = 0; i < ITEM.length; i++) {
+            itemCell[i] = -1;
+            if (m.carries(ag, ITEM[i])) {
+                status[i] = CARRIED;
+            } else {
+                int[] cs = m.objectCells(ITEM[i]);
+                if (cs.length > 0) itemCell[i] = cs[0];
+                status[i] = cs.length > 0 ? ON_MAP : GONE;
+            }
+        }
+        int flags = (m.tableColored ? TABLE_DONE : 0) | (m.chairColored ? CHAIR_DONE : 0) | (m.doorOpen ? DOOR_DONE : 0);
+        int[] tables = m.objectCells(GridEnv.TABLE), chairs = m.objectCells(GridEnv.CHAIR), doors = m.objectCells(GridEnv.DOOR);
+        int table = tables.length > 0 ? tables[0] : -1;
+        int chair = chairs.length > 0 ? chairs[0] : -1;
+        int door = doors.length > 0 ? doors[0] : -1;
+
+        long key = Layout.mix(m.wallHash * 31 + a.y * w + a.x);
+        for (int i = 0; i < ITEM.length; i++) key = Layout.mix(key * 31 + (itemCell[i] << 2 | status[i]));
+        key = Layout.mix(Layout.mix(Layout.mix(Layout.mix(key * 31 + flags) * 31 + table) * 31 + chair) * 31 + door);
+        Plan p = memo.get(key, k -> {
+            Plan found = search(m, a.y * w + a.x, status, itemCell, flags, table, chair, door);
+            return found == null ? IMPOSSIBLE : found;
+        });
+        return p == IMPOSSIBLE ? null : p;
+    }
+
+    // ===== search =====
+
+    private Plan search(GridEnv.GridModel m, int start, int[] status0, int[] itemCell,
+                        int flags0, int table, int chair, int door) {
+        int w = m.getWidth();
+
+        // points of interest; 0 is the start cell
+        int[] poi = new int[16];
+        int n = 0;
+        poi[n++] = start;
+        int[] itemPoi = new int[ITEM.length];
+        for (int i = 0; i < ITEM.length; i++) {
+            itemPoi[i] = -1;
+            if (status0[i] == ON_MAP) { itemPoi[i] = n; poi[n++] = itemCell[i]; }
+        }
+        int tablePoi = -1, chairPoi = -1, doorPois = 0;
+        if ((flags0 & TABLE_DONE) == 0) {
+            if (table < 0) return null;
+            tablePoi = n;
+            poi[n++] = table;
+        }
+        if ((flags0 & CHAIR_DONE) == 0) {
+            if (chair < 0) return null;
+            chairPoi = n;
+            poi[n++] = chair;
+        }
+        if ((flags0 & DOOR_DONE) == 0) {
+            if (door < 0) return null;
+            int dx = door % w, dy = door / w;
+            for (int d = 0; d < 4; d++) {
+                int nx = dx + LiteralPool.DX[d], ny = dy + LiteralPool.DY[d];
+                if (nx < 0 || ny < 0 || nx >= w || ny >= m.getHeight() || m.hasObject(GridEnv.OBST, nx, ny)) continue;
+                doorPois |= 1 << n;
+                poi[n++] = ny * w + nx;
+            }
+        }
+        poi = Arrays.copyOf(poi, n);
+        int[][] d = distances(m, poi);
+
+        // drops: a cell takes at most one item and none where an item (other than ours) lies already
+        int[] sameCell = new int[n];
+        boolean[] foreignItem = new boolean[n];
+        for (int p = 0; p < n; p++) {
+            for (int q = 0; q < n; q++) if (poi[q] == poi[p]) sameCell[p] |= 1 << q;
+            int x = poi[p] % w, y = poi[p] / w;
+            if (m.hasObject(GridEnv.GridModel.ITEMS, x, y)) {
+                boolean ours = false;
+                for (int i = 0; i < ITEM.length; i++) ours |= status0[i] == ON_MAP && itemCell[i] == poi[p];
+                foreignItem[p] = !ours;
+            }
+        }
+
+        // packed state: poi (5 bits) | item status (2 bits each) << 5 | flags << 13 | dropped-at poi mask << 16
+        long s0 = 0;
+        for (int i = 0; i < ITEM.length; i++) s0 |= (long) status0[i] << (5 + 2 * i);
+        s0 |= (long) flags0 << 13;
+
+        Frontier f = new Frontier();
+        f.add(s0, 0.0, -1, 0);
+        int expanded = 0;
+        int goal = -1;
+        while (!f.isEmpty()) {
+            int id = f.poll();
+            if (id < 0) break;
+            expanded++;
+            long s = f.state[id];
+            double c = f.cost[id];
+            int p = (int) (s & 31);
+            int flags = (int) (s >>> 13) & 7;
+            if (flags == ALL_DONE) { goal = id; break; }
+            int dropped = (int) (s >>> 16);
+            int[] st = new int[ITEM.length];
+            int k = 0;
+            for (int i = 0; i < ITEM.length; i++) {
+                st[i] = (int) (s >>> (5 + 2 * i)) & 3;
+                if (st[i] == CARRIED) k++;
+            }
+            boolean paintDone = (flags & (TABLE_DONE | CHAIR_DONE)) == (TABLE_DONE | CHAIR_DONE);
+            boolean doorDone = (flags & DOOR_DONE) != 0;
+
+            // pick a needed item lying here
+            if (k < GridEnv.GridModel.MAX_CARRY) {
+                for (int i = 0; i < ITEM.length; i++) {
+                    if (st[i] != ON_MAP || poi[itemPoi[i]] != poi[p] || !needed(i, paintDone, doorDone)) continue;
+                    f.add(withStatus(s, i, CARRIED), c + STEP + carry(k + 1), id, op(PICK, ITEM[i]));
+                }
+            }
+            // drop an item that is no longer needed
+            if (k > 0 && !foreignItem[p] && (dropped & sameCell[p]) == 0 && !itemOnMapAt(st, itemPoi, poi, poi[p])) {
+                for (int i = 0; i < ITEM.length; i++) {
+                    if (st[i] != CARRIED || needed(i, paintDone, doorDone)) continue;
+                    f.add(withStatus(s, i, GONE) | 1L << (16 + p), c + STEP + carry(k - 1), id, op(DROP, ITEM[i]));
+                }
+            }
+            // paint / open here
+            boolean paints = st[B] == CARRIED && st[CL] == CARRIED;
+            if (paints && (flags & TABLE_DONE) == 0 && poi[p] == table) {
+                f.add(s | (long) TABLE_DONE << 13, c + carry(k), id, op(PAINT, GridEnv.TABLE));
+            }
+            if (paints && (flags & CHAIR_DONE) == 0 && poi[p] == chair) {
+                f.add(s | (long) CHAIR_DONE << 13, c + carry(k), id, op(PAINT, GridEnv.CHAIR));
+            }
+            if (!doorDone && st[K] == CARRIED && st[CD] == CARRIED && isDoorNeighbour(poi[p], door, w)) {
+                f.add(s | (long) DOOR_DONE << 13, c + carry(k), id, op(OPEN, GridEnv.DOOR));
+            }
+            // move to a point of interest that still matters
+            double perCell = STEP + carry(k);
+            for (int q = 1; q < n; q++) {
+                if (q == p || d[p][q] == DistanceOracle.UNREACHABLE) continue;
+                boolean useful;
+                if (q == tablePoi) useful = (flags & TABLE_DONE) == 0;
+                else if (q == chairPoi) useful = (flags & CHAIR_DONE) == 0;
+                else if ((doorPois >> q & 1) != 0) useful = !doorDone;
+                else useful = usefulItemPoi(q, st, itemPoi, paintDone, doorDone);
+                if (!useful) continue;
+                f.add((s & ~31L) | q, c + d[p][q] * perCell, id, op(MOVE, poi[q]));
+            }
+        }
+        if (goal < 0) return null;
+
+        List<Integer> ops = new ArrayList<>();
+        int steps = 0;
+        for (int id = goal; f.parent[id] >= 0; id = f.parent[id]) {
+            int o = f.op[id];
+            if (kind(o) == MOVE) {
+                int cells = d[(int) (f.state[f.parent[id]] & 31)][(int) (f.state[id] & 31)];
+                if (cells == 0) continue;
+                steps += cells;
+            } else {
+                steps++;
+            }
+            ops.add(o);
+        }
+        int[] out = new int[ops.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ops.get(out.length - 1 - i);
+        double paid = BONUS - ((flags0 & TABLE_DONE) != 0 ? GridEnv.REWARD_PAINT : 0)
+                - ((flags0 & CHAIR_DONE) != 0 ? GridEnv.REWARD_PAINT : 0) - ((flags0 & DOOR_DONE) != 0 ? GridEnv.REWARD_OPEN : 0);
+        return new Plan(out, paid - f.cost[goal], steps, expanded);
+    }
+
+    private static boolean needed(int i, boolean paintDone, boolean doorDone) {
+        return i == B || i == CL ? !paintDone : !doorDone;
+    }
+
+    private static boolean usefulItemPoi(int q, int[] st, int[] itemPoi, boolean paintDone, boolean doorDone) {
+        for (int i = 0; i < ITEM.length; i++) {
+            if (itemPoi[i] == q && st[i] == ON_MAP && needed(i, paintDone, doorDone)) return true;
+        }
+        return false;
+    }
+
+    private static boolean itemOnMapAt(int[] st, int[] itemPoi, int[] poi, int cell) {
+        for (int i = 0; i < ITEM.length; i++) {
+            if (st[i] == ON_MAP && poi[itemPoi[i]] == cell) return true;
+        }
+        return false;
+    }
+
+    private static boolean isDoorNeighbour(int cell, int door, int w) {
+        return Math.abs(cell % w - door % w) + Math.abs(cell / w - door / w) == 1;
+    }
+
+    private static long withStatus(long s, int i, int v) {
+        int shift = 5 + 2 * i;
+        return (s & ~(3L << shift)) | (long) v << shift;
+    }
+
+    // pairwise BFS distances between cells; one BFS per cell not seen before on these walls
+    private int[][] distances(GridEnv.GridModel m, int[] cells) {
+        int[] distCells = t.distCells;
+        Map<Integer, Integer> distIndex = t.distIndex;
+        int[][] dist = t.dist;
+        boolean known = true;
+        for (int c : cells) known &= distIndex.containsKey(c);
+        if (!known && distCells.length + cells.length > MAX_DIST_CELLS) { // objects keep moving: start over
+            distCells = new int[0];
+            distIndex.clear();
+            dist = new int[0][];
+        }
+        if (!known) {
+            int[] all = Arrays.copyOf(distCells, distCells.length + cells.length);
+            int n = distCells.length;
+            for (int c : cells) {
+                if (distIndex.containsKey(c)) continue;
+                boolean dup = false;
+                for (int j = distCells.length; j < n; j++) dup |= all[j] == c;
+                if (!dup) all[n++] = c;
+            }
+            all = Arrays.copyOf(all, n);
+
+            int w = m.getWidth();
+            boolean[][] blocked = m.blockedGrid();
+            int[][] nd = new int[n][n];
+            for (int i = 0; i < n; i++) {
+                if (i < distCells.length) {
+                    System.arraycopy(dist[i], 0, nd[i], 0, distCells.length);
+                    for (int j = distCells.length; j < n; j++) nd[i][j] = -1;
+                    continue;
+                }
+                int[] f = DistanceOracle.build(blocked, all[i] % w, all[i] / w).dist;
+                for (int j = 0; j < n; j++) nd[i][j] = f[all[j]];
+            }
+            // older rows learn the new columns from the symmetric entries
+            for (int i = 0; i < distCells.length; i++) {
+                for (int j = distCells.length; j < n; j++) nd[i][j] = nd[j][i];
+            }
+            t.distCells = distCells = all;
+            t.dist = dist = nd;
+            distIndex.clear();
+            for (int i = 0; i < n; i++) distIndex.put(all[i], i);
+        }
+        int[][] out = new int[cells.length][cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            int[] row = dist[distIndex.get(cells[i])];
+            for (int j = 0; j < cells.length; j++) out[i][j] = row[distIndex.get(cells[j])];
+        }
+        return out;
+    }
+
+    // Dijkstra frontier: states in parallel arrays, a binary heap of (cost, id) entries; a cheaper
+    // path pushes a new entry and the stale one is skipped when it surfaces
+    private static final class Frontier {
+        long[] state = new long[256];
+        double[] cost = new double[256];
+        int[] parent = new int[256];
+        int[] op = new int[256];
+        boolean[] done = new boolean[256];
+        private int size;
+        private final Map<Long, Integer> ids = new HashMap<>();
+        private int[] heap = new int[256];
+        private double[] keys = new double[256];
+        private int heapSize;
+
+        void add(long s, double c, int from, int o) {
+            Integer id = ids.get(s);
+            if (id != null) {
+                if (done[id] || cost[id] <= c) return;
+            } else {
+                if (size == state.length) grow();
+                id = size++;
+                ids.put(s, id);
+                state[id] = s;
+            }
+            cost[id] = c;
+            parent[id] = from;
+            op[id] = o;
+            push(id, c);
+        }
+
+        boolean isEmpty() { return heapSize == 0; }
+
+        // cheapest unsettled state id, -1 if none left
+        int poll() {
+            while (heapSize > 0) {
+                int id = heap[0];
+                heapSize--;
+                siftDown(heap[heapSize], keys[heapSize]);
+                if (!done[id]) {
+                    done[id] = true;
+                    return id;
+                }
+            }
+            return -1;
+        }
+
+        private void grow() {
+            int n = state.length * 2;
+            state = Arrays.copyOf(state, n);
+            cost = Arrays.copyOf(cost, n);
+            parent = Arrays.copyOf(parent, n);
+            op = Arrays.copyOf(op, n);
+            done = Arrays.copyOf(done, n);
+        }
+
+        private void push(int id, double key) {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heapSize * 2);
+                keys = Arrays.copyOf(keys, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int up = (i - 1) >>> 1;
+                if (keys[up] <= key) break;
+                heap[i] = heap[up];
+                keys[i] = keys[up];
+                i = up;
+            }
+            heap[i] = id;
+            keys[i] = key;
+        }
+
+        // moves the last entry (id, key) down from the root after the root was taken
+        private void siftDown(int id, double key) {
+            if (heapSize == 0) return;
+            int i = 0;
+            while (true) {
+                int l = 2 * i + 1;
+                if (l >= heapSize) break;
+                int r = l + 1;
+                int min = r < heapSize && keys[r] < keys[l] ? r : l;
+                if (keys[min] >= key) break;
+                heap[i] = heap[min];
+                keys[i] = keys[min];
+                i = min;
+            }
+            heap[i] = id;
+            keys[i] = key;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package env;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//mask -> cells index of the objects in a GridModel, maintained by GridModel.add/remove/set.
+//One growable int list per object bit, so finding every brush (or the single door) is O(k) in the
+//number of matching objects instead of a width x height scan.
+//Removal scans from the end of the list, which makes clearing a layout (LIFO) O(1) per object.
+//Writers are serialized on the index. Agents reading concurrently use cells(bit), an immutable
+//snapshot rebuilt on the first read after a change; size/cell are for code that excludes writers.
+
+final class ObjectIndex {
+
+    private final int[][] cells = new int[32][];
+    private final int[] sizes = new int[32];
+    private final AtomicReferenceArray<int[]> snapshots = new AtomicReferenceArray<>(32);
+
+    private static final int[] NONE = new int[0];
+
+    // bit is a single object bit not yet present at cell
+    synchronized void add(int bit, int cell) {
+        int s = Integer.numberOfTrailingZeros(bit);
+        snapshots.set(s, null);
+        int[] a = cells[s];
+        if (a == null) a = cells[s] = new int[8];
+        else if (sizes[s] == a.length) a = cells[s] = Arrays.copyOf(a, a.length * 2);
+        a[sizes[s]++] = cell;
+    }
+
+    // bit is a single object bit present at cell
+    synchronized void remove(int bit, int cell) {
+        int s = Integer.numberOfTrailingZeros(bit);
+        snapshots.set(s, null);
+        int[] a = cells[s];
+        for (int i = sizes[s] - 1; i >= 0; i--) {
+            if (a[i] == cell) {
+                a[i] = a[--sizes[s]];
+                return;
+            }
+        }
+    }
+
+    // number of cells holding a single-bit mask
+    int size(int bit) {
+        return sizes[Integer.numberOfTrailingZeros(bit)];
+    }
+
+    // i-th cell (0 <= i < size(bit)) holding a single-bit mask, in no particular order
+    int cell(int bit, int i) {
+        return cells[Integer.numberOfTrailingZeros(bit)][i];
+    }
+
+    // cells holding a single-bit mask, safe to read while other threads add/remove; do not modify
+    int[] cells(int bit) {
+        int s = Integer.numberOfTrailingZeros(bit);
+        int[] a = snapshots.get(s);
+        return a != null ? a : snapshot(s);
+    }
+
+    private synchronized int[] snapshot(int s) {
+        int[] a = snapshots.get(s);
+        if (a == null) {
+            a = sizes[s] == 0 ? NONE : Arrays.copyOf(cells[s], sizes[s]);
+            snapshots.set(s, a);
+        }
+        return a;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(sizes, 0);
+        for (int s = 0; s < 32; s++) snapshots.set(s, null);
+    }
+}
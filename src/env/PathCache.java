@@ -0,0 +1,132 @@
+package env;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import jason.asSyntax.Atom;
+
+//Path cache shared by move(X,Y) and .plan_path.
+//Entries are keyed by (obstacle-layout version, start, goal); a new layout version drops everything.
+//Besides exact (start, goal) hits, a query whose start lies on the last path found to the same goal
+//is answered with the suffix of that path (the agent following a plan one step at a time).
+
+final class PathCache {
+
+    // interned direction atoms, so path -> directions conversion does not allocate per step
+    static final Atom UP    = new Atom("up");
+    static final Atom DOWN  = new Atom("down");
+    static final Atom LEFT  = new Atom("left");
+    static final Atom RIGHT = new Atom("right");
+
+    private static final int[] NO_PATH = new int[0];
+    private static final int MAX_ENTRIES = 1024;
+
+    private long version = -1;
+    private PathFinding.Engine engine;
+
+    // (start << 32 | goal) -> path
+    private final Map<Long, int[]> exact = new LinkedHashMap<Long, int[]>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> e) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    // goal -> last path found to it
+    private final Map<Integer, int[]> byGoal = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, int[]> e) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder suffixHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Shortest path from (sx,sy) to (gx,gy) as cell indices (y * width + x), empty if unreachable.
+     * The returned array is shared with the cache and must not be modified.
+     * Misses are searched outside the cache lock, so agents planning at the same time do not queue up.
+     */
+    int[] path(GridEnv.GridModel m, int sx, int sy, int gx, int gy) {
+        int w = m.getWidth();
+        int start = sy * w + sx;
+        int goal  = gy * w + gx;
+        long key = ((long) start << 32) | (goal & 0xffffffffL);
+
+        long v;
+        PathFinding.Engine e;
+        synchronized (this) {
+            if (version != m.layoutVersion || engine != m.pathEngine) {
+                exact.clear();
+                byGoal.clear();
+                version = m.layoutVersion;
+                engine = m.pathEngine;
+            }
+            v = version;
+            e = engine;
+
+            int[] p = exact.get(key);
+            if (p != null) {
+                hits.increment();
+                return p;
+            }
+
+            int[] last = byGoal.get(goal);
+            if (last != null) {
+                for (int i = 0; i < last.length; i++) {
+                    if (last[i] == start) {
+                        p = Arrays.copyOfRange(last, i, last.length);
+                        exact.put(key, p);
+                        suffixHits.increment();
+                        return p;
+                    }
+                }
+            }
+        }
+
+        misses.increment();
+        int[] p = PathFinding.findPathIndices(sx, sy, gx, gy, m.blockedGrid(), e);
+        m.searched(PathFinding.lastExpanded(), p.length);
+        if (p.length == 0) p = NO_PATH;
+        synchronized (this) {
+            if (version == v && engine == e) { // not invalidated while searching
+                exact.put(key, p);
+                if (p.length > 0) byGoal.put(goal, p);
+            }
+        }
+        return p;
+    }
+
+    long hits()       { return hits.sum(); }
+    long suffixHits() { return suffixHits.sum(); }
+    long misses()     { return misses.sum(); }
+
+    synchronized void clear() {
+        exact.clear();
+        byGoal.clear();
+        version = -1;
+    }
+
+    // direction atom for one step between adjacent cells, null if they are not adjacent
+    static Atom direction(int from, int to, int width) {
+        int ax = from % width, ay = from / width;
+        int bx = to % width,   by = to / width;
+        if (by == ay) {
+            if (bx == ax + 1) return RIGHT;
+            if (bx == ax - 1) return LEFT;
+        } else if (bx == ax) {
+            if (by == ay + 1) return DOWN;
+            if (by == ay - 1) return UP;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "PathCache(hits=" + hits() + ", suffixHits=" + suffixHits() + ", misses=" + misses() + ")";
+    }
+}
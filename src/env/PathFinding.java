@@ -16,6 +16,30 @@ import org.jgrapht.graph.SimpleWeightedGraph;
 //in a grid-based environment with blocked and walkable cells.
  
 public class PathFinding {
+
+    //Which A* implementation findPath uses.
+    //GRID (the default) searches blocked[y][x] directly and returns the same paths as JGRAPHT, which
+    //builds a SimpleWeightedGraph per call (PathFindingCheck compares the two).
+    //INCREMENTAL keeps D* Lite searches per agent and goal in the model (IncrementalPath); calls
+    //without an agent, like the static findPath here, use GRID. Its paths have the same length as the
+    //others but are not always the same path, so it is opt-in (pathfinding=incremental).
+    public enum Engine {
+        JGRAPHT, GRID, INCREMENTAL;
+
+        public static Engine parse(String s) {
+            if (s == null) return GRID;
+            String e = s.trim();
+            if (e.equalsIgnoreCase("jgrapht")) return JGRAPHT;
+            return e.equalsIgnoreCase("incremental") || e.equalsIgnoreCase("dstar") ? INCREMENTAL : GRID;
+        }
+    }
+
+    private static volatile Engine defaultEngine =
+            Engine.parse(System.getProperty("pathfinding.engine"));
+
+    public static Engine getDefaultEngine() { return defaultEngine; }
+
+    public static void setDefaultEngine(Engine e) { defaultEngine = Objects.requireNonNull(e); }
     
     
     //Represents a single cell in the grid with x and y coordinates.
@@ -67,7 +91,22 @@ public class PathFinding {
     
     public static List<Cell> findPath(
             int startX, int startY, int goalX, int goalY, boolean[][] blocked) {
-        
+        return findPath(startX, startY, goalX, goalY, blocked, defaultEngine);
+    }
+
+    /**
+     * Same as {@link #findPath(int, int, int, int, boolean[][])} but with an explicit engine.
+     */
+    public static List<Cell> findPath(
+            int startX, int startY, int goalX, int goalY, boolean[][] blocked, Engine engine) {
+        if (engine != Engine.JGRAPHT) return toCells(findPathIndices(startX, startY, goalX, goalY, blocked), blocked);
+        return findPathJGraphT(startX, startY, goalX, goalY, blocked);
+    }
+
+    private static List<Cell> findPathJGraphT(
+            int startX, int startY, int goalX, int goalY, boolean[][] blocked) {
+        SCRATCH.get().expanded = 0; // until the search below runs
+
         // Get grid dimensions
         int rows = blocked.length;
         if (rows == 0) return Collections.emptyList();
@@ -141,8 +180,256 @@ public class PathFinding {
 
         // Find the shortest path from start to goal
         GraphPath<Cell, DefaultWeightedEdge> path = aStar.getPath(start, goal);
+        SCRATCH.get().expanded = aStar.getNumberOfExpandedNodes(); // for lastExpanded(), like the grid engine
 
         // Return the list of cells in the path, or an empty list if no path exists
         return path != null ? new ArrayList<>(path.getVertexList()) : Collections.emptyList();
     }
+
+    // ===================== Grid A* (no graph construction) =====================
+
+    static final int[] NO_PATH = new int[0];
+
+    // Neighbour order is the order JGraphT visits a cell's edges when the graph is built
+    // row by row as above: up, left, right, down.
+    private static final int[] DX = {0, -1, 1, 0};
+    private static final int[] DY = {-1, 0, 0, 1};
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Grid-native A*: searches blocked[y][x] directly with int-indexed open/closed sets and a
+     * primitive pairing heap. Scratch buffers are reused per thread, so a call only allocates
+     * the returned path. It returns the path the JGraphT engine returns: neighbours are visited in
+     * JGraphT's edge order, the heap is keyed by f alone and links nodes exactly like the jheaps
+     * PairingHeap behind AStarShortestPath, so equal-cost ties are broken the same way.
+     *
+     * @return the path as cell indices (y * cols + x) from start to goal, empty if no path exists
+     */
+    public static int[] findPathIndices(
+            int startX, int startY, int goalX, int goalY, boolean[][] blocked) {
+        int rows = blocked.length;
+        if (rows == 0) return searched(NO_PATH, 0);
+        int cols = blocked[0].length;
+
+        if (startX < 0 || startX >= cols || startY < 0 || startY >= rows) return searched(NO_PATH, 0);
+        if (goalX  < 0 || goalX  >= cols || goalY  < 0 || goalY  >= rows) return searched(NO_PATH, 0);
+        if (blocked[startY][startX] || blocked[goalY][goalX]) return searched(NO_PATH, 0);
+
+        int start = startY * cols + startX;
+        int goal  = goalY * cols + goalX;
+        if (start == goal) return searched(new int[] { start }, 0);
+
+        Scratch s = SCRATCH.get().begin(rows * cols);
+        int stamp = s.stamp;
+
+        s.seen[start] = stamp;
+        s.g[start] = 0;
+        s.parent[start] = -1;
+        s.push(start, 0);
+
+        int expanded = 0;
+        while (s.size > 0) {
+            int cur = s.poll();
+            if (cur == goal) return searched(s.trace(goal), expanded);
+            s.closed[cur] = stamp;
+            expanded++;
+
+            int cx = cur % cols, cy = cur / cols;
+            int ng = s.g[cur] + 1;
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + DX[d], ny = cy + DY[d];
+                if (nx < 0 || nx >= cols || ny < 0 || ny >= rows || blocked[ny][nx]) continue;
+
+                int n = ny * cols + nx;
+                int f = ng + Math.abs(nx - goalX) + Math.abs(ny - goalY);
+                if (s.seen[n] == stamp) {
+                    if (ng >= s.g[n]) continue;
+                    s.g[n] = ng;
+                    s.parent[n] = cur;
+                    if (s.closed[n] == stamp) {
+                        s.closed[n] = 0;
+                        s.push(n, f);
+                    } else {
+                        s.decreaseKey(n, f);
+                    }
+                } else {
+                    s.seen[n] = stamp;
+                    s.g[n] = ng;
+                    s.parent[n] = cur;
+                    s.push(n, f);
+                }
+            }
+        }
+        return searched(NO_PATH, expanded);
+    }
+
+    // remembers the expansions of the calling thread's search for lastExpanded()
+    private static int[] searched(int[] path, int expanded) {
+        SCRATCH.get().expanded = expanded;
+        return path;
+    }
+
+    // cells expanded by the calling thread's last search (either engine); PathFinding has no
+    // environment at hand, so callers with a model report it (GridModel.searched)
+    static int lastExpanded() {
+        return SCRATCH.get().expanded;
+    }
+
+    /**
+     * int-encoded path with an explicit engine; JGRAPHT results are converted from the Cell list.
+     */
+    public static int[] findPathIndices(
+            int startX, int startY, int goalX, int goalY, boolean[][] blocked, Engine engine) {
+        if (engine != Engine.JGRAPHT) return findPathIndices(startX, startY, goalX, goalY, blocked);
+
+        List<Cell> cells = findPathJGraphT(startX, startY, goalX, goalY, blocked);
+        if (cells.isEmpty()) return NO_PATH;
+        int cols = blocked[0].length;
+        int[] out = new int[cells.size()];
+        for (int i = 0; i < out.length; i++) out[i] = cells.get(i).y * cols + cells.get(i).x;
+        return out;
+    }
+
+    // int-encoded path -> Cell list (the findPath contract)
+    static List<Cell> toCells(int[] path, boolean[][] blocked) {
+        if (path.length == 0) return Collections.emptyList();
+        int cols = blocked[0].length;
+        List<Cell> out = new ArrayList<>(path.length);
+        for (int idx : path) out.add(new Cell(idx % cols, idx / cols));
+        return out;
+    }
+
+    // Per-thread A* buffers. seen/closed use a generation stamp so nothing is cleared between calls.
+    // The open set is a pairing heap over cell indices (oldest child / younger sibling / older sibling or
+    // parent links), linked as jheaps' PairingHeap does: on equal keys the node already in the heap
+    // stays the root, which is what decides JGraphT's ties.
+    private static final class Scratch {
+        int stamp = 0;
+        int expanded; // of the last search, for lastExpanded()
+        int[] seen = new int[0];
+        int[] closed = new int[0];
+        int[] g = new int[0];
+        int[] parent = new int[0];
+        int[] keys = new int[0];
+        int[] child = new int[0];
+        int[] next = new int[0];
+        int[] prev = new int[0];
+        int root;
+        int size;
+
+        Scratch begin(int cells) {
+            if (seen.length < cells) {
+                seen = new int[cells];
+                closed = new int[cells];
+                g = new int[cells];
+                parent = new int[cells];
+                keys = new int[cells];
+                child = new int[cells];
+                next = new int[cells];
+                prev = new int[cells];
+                stamp = 0;
+            }
+            if (++stamp == Integer.MAX_VALUE) {
+                java.util.Arrays.fill(seen, 0);
+                java.util.Arrays.fill(closed, 0);
+                stamp = 1;
+            }
+            root = -1;
+            size = 0;
+            return this;
+        }
+
+        void push(int n, int k) {
+            keys[n] = k;
+            child[n] = -1;
+            next[n] = -1;
+            prev[n] = -1;
+            root = link(root, n);
+            size++;
+        }
+
+        void decreaseKey(int n, int k) {
+            int old = keys[n];
+            keys[n] = k;
+            if (k == old || n == root) return;
+            // cut n (and its subtree) out of its parent's child list, then link it with the root
+            int p = prev[n];
+            if (next[n] >= 0) prev[next[n]] = p;
+            if (child[p] == n) child[p] = next[n];
+            else next[p] = next[n];
+            next[n] = -1;
+            prev[n] = -1;
+            root = link(root, n);
+        }
+
+        int poll() {
+            int top = root;
+            int c = child[top];
+            child[top] = -1;
+            if (c >= 0) prev[c] = -1;
+            root = combine(c);
+            size--;
+            return top;
+        }
+
+        // makes the larger root the oldest child of the other; f wins ties
+        private int link(int f, int s) {
+            if (s < 0) return f;
+            if (f < 0) return s;
+            if (keys[f] > keys[s]) {
+                int t = f;
+                f = s;
+                s = t;
+            }
+            next[s] = child[f];
+            prev[s] = f;
+            if (child[f] >= 0) prev[child[f]] = s;
+            child[f] = s;
+            return f;
+        }
+
+        // two-pass pairing of the sibling list starting at l: pairs left to right, then the pairs are
+        // linked in reverse order of pairing
+        private int combine(int l) {
+            if (l < 0) return -1;
+            int pairs = -1;
+            int it = l;
+            while (it >= 0) {
+                int p = it;
+                it = next[it];
+                if (it < 0) {
+                    next[p] = pairs;
+                    prev[p] = -1;
+                    pairs = p;
+                } else {
+                    int after = next[it];
+                    next[p] = -1;
+                    prev[p] = -1;
+                    next[it] = -1;
+                    prev[it] = -1;
+                    p = link(p, it);
+                    next[p] = pairs;
+                    pairs = p;
+                    it = after;
+                }
+            }
+            int f = -1;
+            for (it = pairs; it >= 0; ) {
+                int after = next[it];
+                next[it] = -1;
+                f = link(f, it);
+                it = after;
+            }
+            return f;
+        }
+
+        int[] trace(int goal) {
+            int len = 0;
+            for (int c = goal; c != -1; c = parent[c]) len++;
+            int[] path = new int[len];
+            for (int c = goal; c != -1; c = parent[c]) path[--len] = c;
+            return path;
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package env;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+//Differential check of the GRID path engine against JGRAPHT: on LayoutGenerator layouts of several sizes
+//and wall densities, random start/goal pairs (walls included, so no-path answers are covered too) go
+//through both engines and the returned paths must be the same cells in the same order, not just the same
+//length. Exits with status 1 on the first mismatch.
+//
+// usage: PathFindingCheck [--layouts N] [--queries M] [--seed S]   (defaults: 20 layouts per size and wall
+//                         density, 50 queries on each)
+
+public final class PathFindingCheck {
+
+    private static final int[][] SIZES = {{5, 5}, {8, 6}, {12, 12}, {20, 15}, {40, 40}, {64, 48}};
+    private static final double[] DENSITIES = {0.0, 0.1, 0.25, 0.4};
+
+    public static void main(String[] args) {
+        int layouts = 20, queries = 50;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--layouts": layouts = Integer.parseInt(args[++i]); break;
+                case "--queries": queries = Integer.parseInt(args[++i]); break;
+                case "--seed":    seed = Long.parseLong(args[++i]);      break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        SplittableRandom rng = new SplittableRandom(seed);
+        long checked = 0, found = 0;
+        for (int[] size : SIZES) {
+            for (double density : DENSITIES) {
+                for (int l = 0; l < layouts; l++) {
+                    Layout layout = LayoutGenerator.generate(rng.nextLong(), size[0], size[1], density);
+                    boolean[][] blocked = blocked(layout);
+                    for (int q = 0; q < queries; q++) {
+                        int sx = rng.nextInt(size[0]), sy = rng.nextInt(size[1]);
+                        int gx = rng.nextInt(size[0]), gy = rng.nextInt(size[1]);
+                        int[] grid = PathFinding.findPathIndices(sx, sy, gx, gy, blocked, PathFinding.Engine.GRID);
+                        int[] jgrapht = PathFinding.findPathIndices(sx, sy, gx, gy, blocked, PathFinding.Engine.JGRAPHT);
+                        if (!Arrays.equals(grid, jgrapht)) {
+                            System.out.println("MISMATCH on " + size[0] + "x" + size[1] + " density " + density
+                                    + " from " + sx + "," + sy + " to " + gx + "," + gy + "\n  grid:    "
+                                    + cells(grid, size[0]) + "\n  jgrapht: " + cells(jgrapht, size[0]));
+                            System.exit(1);
+                        }
+                        checked++;
+                        if (grid.length > 0) found++;
+                    }
+                }
+            }
+        }
+        System.out.println("GRID returns JGraphT's path on " + checked + " queries (" + found + " with a path)");
+    }
+
+    private static boolean[][] blocked(Layout layout) {
+        boolean[][] b = new boolean[layout.height()][layout.width()];
+        for (int i = 0; i < layout.wallCount(); i++) {
+            int c = layout.wallCell(i);
+            b[c / layout.width()][c % layout.width()] = true;
+        }
+        return b;
+    }
+
+    private static String cells(int[] path, int w) {
+        List<PathFinding.Cell> cs = PathFinding.toCells(path, new boolean[1][w]);
+        return cs.toString();
+    }
+}
@@ -0,0 +1,433 @@
+package env;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//Tabular Q-learning / SARSA trainer with the rewards of GridEnv.executeAction.
+//The Q-table is one flat double[] indexed by packed state * ACTIONS + action, where
+//  state = (cell << 11) | (items << 3) | flags
+//  items: 2 bits each for BRUSH, KEY, CODE, COLOR (0 at its layout cell, 1 carried, 2 dropped)
+//  flags: table colored, chair colored, door open
+//Each worker trains on its own copy of the table; after every round of --merge-every episodes per worker
+//the copies are averaged into the shared table, which seeds the next round. Rounds, worker seeds and the
+//merge order are fixed, so a run is reproducible for a given seed and thread count.
+//The step loop works on primitives only (no Location, no locks, no allocation).
+//
+//Adaptations to keep the state tabular: at most one item can be dropped and it is not picked up again, so
+//the state never has to remember where it lies (GridEnv refuses a drop on a cell holding an item, which the
+//simulator then always knows about); pick takes the item under the agent and one instance per item type is
+//used. One drop is enough: MAX_CARRY is 3 and the mission takes four items. GridEnv pays
+//paint/open again for a target that is already done; by default the trainer scores such repeats as failed
+//actions, otherwise the learned policy farms them (--repeat-pays keeps the environment's rule).
+//
+// usage: QLearning [--layout pdf|random:WxH:density:seed|file] [--episodes N] [--threads T] [--seed S]
+//                  [--alpha A] [--gamma G] [--epsilon E] [--init-q Q] [--max-steps M] [--merge-every K] [--sarsa]
+//                  [--repeat-pays] [--policy out.csv]
+
+public final class QLearning {
+
+    static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3, PICK = 4, PAINT = 5, OPEN = 6, DROP = 7; // DROP + item
+    static final int ACTIONS = 11;
+    private static final String[] ACTION_NAMES = {"move(up)", "move(down)", "move(left)", "move(right)", "pick", "paint",
+                                                  "open(d)", "drop(b)", "drop(k)", "drop(cd)", "drop(cl)"};
+    private static final String[] PICKS = {"pick(b)", "pick(k)", "pick(cd)", "pick(cl)"};
+
+    private static final int B = 0, K = 1, CD = 2, CL = 3;
+    private static final int HOME = 0, CARRIED = 1, DROPPED = 2;
+    private static final int DROPPED_BITS = 0xaa; // high bit of every item status
+    private static final int TABLE_DONE = 1, CHAIR_DONE = 2, DOOR_DONE = 4, ALL_DONE = 7;
+
+    // carried items for every value of the 8 item-status bits
+    private static final byte[] CARRIED_COUNT = new byte[256];
+    static {
+        for (int v = 0; v < 256; v++) {
+            for (int i = 0; i < 4; i++) if ((v >>> 2 * i & 3) == CARRIED) CARRIED_COUNT[v]++;
+        }
+    }
+    private static final long MAX_TABLE = 1L << 26; // Q entries (512 MB)
+
+    // ===== world, shared read-only by all workers =====
+
+    final int width, height, cells, states;
+    private final int start;
+    private final int[] next;       // next[cell * 4 + dir]: target cell, -1 if outside or a wall
+    private final byte[] itemAt;    // item (B, K, CD, CL) lying on a cell in the layout, -1 if none
+    private final int table, chair, door;
+    private final boolean repeatPays;
+
+    QLearning(Layout layout, boolean repeatPays) {
+        width = layout.width();
+        height = layout.height();
+        // checked in long before narrowing: cells << 11 overflows int from about 1024x1024 cells
+        long stateCount = ((long) width * height) << 11;
+        if (stateCount * ACTIONS > MAX_TABLE) {
+            throw new IllegalArgumentException("layout too large for a tabular Q-table: " + width + "x" + height);
+        }
+        cells = width * height;
+        states = (int) stateCount;
+        this.repeatPays = repeatPays;
+        start = layout.agentCell();
+
+        boolean[] wall = new boolean[cells];
+        for (int i = 0; i < layout.wallCount(); i++) wall[layout.wallCell(i)] = true;
+        next = new int[cells * 4];
+        for (int c = 0; c < cells; c++) {
+            int x = c % width, y = c / width;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + LiteralPool.DX[d], ny = y + LiteralPool.DY[d];
+                boolean ok = nx >= 0 && ny >= 0 && nx < width && ny < height && !wall[ny * width + nx];
+                next[c * 4 + d] = ok ? ny * width + nx : -1;
+            }
+        }
+
+        itemAt = new byte[cells];
+        Arrays.fill(itemAt, (byte) -1);
+        int t = -1, ch = -1, dr = -1, seen = 0;
+        for (int i = 0; i < layout.objectCount(); i++) {
+            int m = layout.objectMask(i), c = layout.objectCell(i);
+            int item = m == GridEnv.BRUSH ? B : m == GridEnv.KEY ? K : m == GridEnv.CODE ? CD : m == GridEnv.COLOR ? CL : -1;
+            if (item >= 0 && (seen & 1 << item) == 0) {
+                seen |= 1 << item;
+                itemAt[c] = (byte) item;
+            }
+            if (m == GridEnv.TABLE && t < 0) t = c;
+            if (m == GridEnv.CHAIR && ch < 0) ch = c;
+            if (m == GridEnv.DOOR && dr < 0) dr = c;
+        }
+        table = t;
+        chair = ch;
+        door = dr;
+    }
+
+    int startState() {
+        return start << 11;
+    }
+
+    static boolean done(int s) {
+        return (s & 7) == ALL_DONE;
+    }
+
+    // ===== simulator =====
+
+    // applies action a in state s; the next state goes to out[0], the return value is the reward
+    // GridEnv would publish (action reward plus the carrying reward afterwards)
+    double step(int s, int a, int[] out) {
+        int cell = s >>> 11, items = (s >>> 3) & 0xff, flags = s & 7;
+        double r = GridEnv.REWARD_FAILED;
+        switch (a) {
+            case UP: case DOWN: case LEFT: case RIGHT: {
+                int n = next[cell * 4 + a];
+                if (n >= 0) { cell = n; r = GridEnv.REWARD_OK; }
+                break;
+            }
+            case PICK: {
+                int i = itemAt[cell];
+                if (i >= 0 && (items >>> 2 * i & 3) == HOME && CARRIED_COUNT[items] < GridEnv.GridModel.MAX_CARRY) {
+                    items |= CARRIED << 2 * i;
+                    r = GridEnv.REWARD_OK;
+                }
+                break;
+            }
+            case PAINT: {
+                if (carries(items, B) && carries(items, CL)) {
+                    if (cell == table && (repeatPays || (flags & TABLE_DONE) == 0)) { flags |= TABLE_DONE; r = GridEnv.REWARD_PAINT; }
+                    else if (cell == chair && (repeatPays || (flags & CHAIR_DONE) == 0)) { flags |= CHAIR_DONE; r = GridEnv.REWARD_PAINT; }
+                }
+                break;
+            }
+            case OPEN: {
+                if (carries(items, K) && carries(items, CD) && door >= 0
+                        && (repeatPays || (flags & DOOR_DONE) == 0)
+                        && Math.abs(cell % width - door % width) + Math.abs(cell / width - door / width) == 1) {
+                    flags |= DOOR_DONE;
+                    r = GridEnv.REWARD_OPEN;
+                }
+                break;
+            }
+            default: { // DROP + item: one dropped item at most, never on a cell whose own item is still there
+                int i = a - DROP, here = itemAt[cell];
+                if (carries(items, i) && (items & DROPPED_BITS) == 0
+                        && (here < 0 || (items >>> 2 * here & 3) != HOME)) {
+                    items ^= (CARRIED ^ DROPPED) << 2 * i;
+                    r = GridEnv.REWARD_OK;
+                }
+            }
+        }
+        int k = CARRIED_COUNT[items];
+        out[0] = (cell << 11) | (items << 3) | flags;
+        return r + GridEnv.rewardForCarrying(k);
+    }
+
+    private static boolean carries(int items, int i) {
+        return (items >>> 2 * i & 3) == CARRIED;
+    }
+
+    // ===== training =====
+
+    static final class Config {
+        int episodes = 200_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        double alpha = 0.5, gamma = 0.99, epsilon = 1.0, minEpsilon = 0.05;
+        double initialQ = 2.8; // optimistic: the paint/open bonuses, so unexplored actions look worth trying
+        int maxSteps = 200;
+        int mergeEvery = 2_000;
+        boolean sarsa = false;
+    }
+
+    // per-worker table and counters
+    private final class Worker implements Callable<Worker> {
+        final double[] q = new double[states * ACTIONS];
+        final int[] out = new int[1];
+        final Config cfg;
+        SplittableRandom rng;
+        int episodes;
+        double epsilon;
+        long steps;
+
+        Worker(Config cfg) {
+            this.cfg = cfg;
+        }
+
+        @Override
+        public Worker call() {
+            for (int e = 0; e < episodes; e++) episode();
+            return this;
+        }
+
+        private void episode() {
+            double[] q = this.q;
+            int s = startState();
+            int a = choose(s);
+            for (int t = 0; t < cfg.maxSteps && !done(s); t++) {
+                double r = step(s, a, out);
+                int s2 = out[0];
+                int a2 = choose(s2);
+                double target = r;
+                if (!done(s2)) target += cfg.gamma * (cfg.sarsa ? q[s2 * ACTIONS + a2] : q[s2 * ACTIONS + greedy(q, s2)]);
+                int i = s * ACTIONS + a;
+                q[i] += cfg.alpha * (target - q[i]);
+                s = s2;
+                a = a2;
+                steps++;
+            }
+        }
+
+        private int choose(int s) {
+            return rng.nextDouble() < epsilon ? rng.nextInt(ACTIONS) : greedy(q, s);
+        }
+    }
+
+    static int greedy(double[] q, int s) {
+        int base = s * ACTIONS, best = 0;
+        double v = q[base];
+        for (int a = 1; a < ACTIONS; a++) {
+            if (q[base + a] > v) { v = q[base + a]; best = a; }
+        }
+        return best;
+    }
+
+    // trains and returns the merged Q-table; prints progress per merge round
+    double[] train(Config cfg) throws Exception {
+        int threads = fittingThreads(Math.max(1, cfg.threads));
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) workers.add(new Worker(cfg));
+        double[] shared = new double[states * ACTIONS];
+        Arrays.fill(shared, cfg.initialQ);
+
+        int perRound = Math.max(1, cfg.mergeEvery);
+        int rounds = Math.max(1, (cfg.episodes + perRound * threads - 1) / (perRound * threads));
+        SplittableRandom master = new SplittableRandom(cfg.seed);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long t0 = System.nanoTime(), steps = 0;
+        int left = cfg.episodes;
+        try {
+            for (int round = 0; round < rounds && left > 0; round++) {
+                double eps = Math.max(cfg.minEpsilon, cfg.epsilon * (1.0 - (double) round / rounds));
+                for (Worker w : workers) {
+                    System.arraycopy(shared, 0, w.q, 0, shared.length);
+                    w.rng = master.split();
+                    w.epsilon = eps;
+                    w.episodes = Math.min(perRound, left);
+                    left -= w.episodes;
+                    w.steps = 0;
+                }
+                for (Future<Worker> f : pool.invokeAll(workers)) f.get();
+
+                // average in worker order
+                Arrays.fill(shared, 0.0);
+                int active = 0;
+                for (Worker w : workers) {
+                    if (w.episodes == 0) continue;
+                    active++;
+                    double[] q = w.q;
+                    for (int i = 0; i < shared.length; i++) shared[i] += q[i];
+                    steps += w.steps;
+                }
+                double inv = 1.0 / active;
+                for (int i = 0; i < shared.length; i++) shared[i] *= inv;
+
+                if (round % Math.max(1, rounds / 10) == 0 || round == rounds - 1) {
+                    double secs = (System.nanoTime() - t0) / 1e9;
+                    System.out.printf("[round %d/%d] eps=%.3f steps=%d  %.2f M steps/s (%.2f M/s per thread)  greedy return=%.4f%n",
+                            round + 1, rounds, eps, steps, steps / secs / 1e6, steps / secs / 1e6 / threads,
+                            rollout(shared, cfg.maxSteps, null));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return shared;
+    }
+
+    // every worker holds its own Q-table next to the shared one, so (threads + 1) tables must fit in the
+    // heap; fewer workers are used when they do not, and training cannot run if two tables do not fit
+    int fittingThreads(int threads) {
+        long table = (long) states * ACTIONS * Double.BYTES;
+        long heap = Runtime.getRuntime().maxMemory();
+        long fit = (heap - heap / 8) / table - 1; // an eighth of the heap left for everything else
+        if (fit < 1) {
+            throw new IllegalArgumentException("Q-tables of " + (table >> 20) + " MB for " + width + "x" + height
+                    + " do not fit twice in the " + (heap >> 20) + " MB heap");
+        }
+        if (fit >= threads) return threads;
+        System.out.println("Using " + fit + " of " + threads + " threads: " + (threads + 1) + " Q-tables of "
+                + (table >> 20) + " MB would not fit in the " + (heap >> 20) + " MB heap");
+        return (int) fit;
+    }
+
+    // return of the greedy policy from the start state; appends the actions to trace if given
+    double rollout(double[] q, int maxSteps, List<String> trace) {
+        int[] out = new int[1];
+        int s = startState();
+        double ret = 0.0;
+        for (int t = 0; t < maxSteps && !done(s); t++) {
+            int a = greedy(q, s);
+            if (trace != null) trace.add(actionTerm(s, a));
+            ret += step(s, a, out);
+            s = out[0];
+        }
+        return ret;
+    }
+
+    // GridEnv action for a in state s (pick and paint name the object under the agent)
+    private String actionTerm(int s, int a) {
+        int cell = s >>> 11;
+        if (a == PICK) return PICKS[Math.max(0, itemAt[cell])];
+        if (a == PAINT) return cell == chair && cell != table ? "paint(ch)" : "paint(t)";
+        return ACTION_NAMES[a];
+    }
+
+    // greedy action of every state training has updated (some value moved off initialQ), in PDF coordinates;
+    // item columns hold 0 (at its layout cell), 1 (carried) or 2 (dropped)
+    void exportPolicy(double[] q, double initialQ, Path file) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        try (Writer w = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16)) {
+            w.write("x,y,brush,key,code,color,table_colored,chair_colored,door_open,action,q\n");
+            for (int s = 0; s < states; s++) {
+                int base = s * ACTIONS;
+                boolean visited = false;
+                for (int a = 0; a < ACTIONS && !visited; a++) visited = q[base + a] != initialQ;
+                if (!visited) continue;
+                int cell = s >>> 11, items = (s >>> 3) & 0xff, flags = s & 7;
+                int a = greedy(q, s);
+                w.write((cell % width + 1) + "," + (height - cell / width) + ","
+                        + (items & 3) + "," + (items >> 2 & 3) + "," + (items >> 4 & 3) + "," + (items >> 6 & 3) + ","
+                        + (flags & 1) + "," + (flags >> 1 & 1) + "," + (flags >> 2 & 1) + ","
+                        + actionTerm(s, a).replace(",", ";") + "," + q[base + a] + "\n");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config cfg = new Config();
+        Layout layout = Layout.pdf();
+        boolean repeatPays = false;
+        Path policy = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--layout":      layout = Layout.fromSpec(args[++i]);                break;
+                case "--episodes":    cfg.episodes = Integer.parseInt(args[++i]);          break;
+                case "--threads":     cfg.threads = Integer.parseInt(args[++i]);           break;
+                case "--seed":        cfg.seed = Long.parseLong(args[++i]);                break;
+                case "--alpha":       cfg.alpha = Double.parseDouble(args[++i]);           break;
+                case "--gamma":       cfg.gamma = Double.parseDouble(args[++i]);           break;
+                case "--epsilon":     cfg.epsilon = Double.parseDouble(args[++i]);         break;
+                case "--init-q":      cfg.initialQ = Double.parseDouble(args[++i]);        break;
+                case "--max-steps":   cfg.maxSteps = Integer.parseInt(args[++i]);          break;
+                case "--merge-every": cfg.mergeEvery = Integer.parseInt(args[++i]);        break;
+                case "--sarsa":       cfg.sarsa = true;                                    break;
+                case "--repeat-pays": repeatPays = true;                                   break;
+                case "--policy":      policy = Paths.get(args[++i]);                       break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        QLearning ql = new QLearning(layout, repeatPays);
+        System.out.println("Training " + (cfg.sarsa ? "SARSA" : "Q-learning") + " for " + cfg.episodes + " episodes on "
+                + cfg.threads + " threads, seed = " + cfg.seed + ", " + layout + ", " + ql.states + " states");
+        long t0 = System.nanoTime();
+        double[] q = ql.train(cfg);
+        System.out.printf("trained in %.3f s%n", (System.nanoTime() - t0) / 1e9);
+
+        List<String> trace = new ArrayList<>();
+        double ret = ql.rollout(q, cfg.maxSteps, trace);
+        System.out.println("Greedy policy: " + trace.size() + " steps, return " + ret);
+        System.out.println("  " + String.join(" ", trace));
+
+        // the same actions on a real model (catches the simulator's simplifications), and MissionPlanner's
+        // complete mission for reference
+        GridEnv.GridModel m = new GridEnv.GridModel(layout);
+        m.resetToLayout();
+        double replayed = replay(m, trace);
+        System.out.println("Replayed on GridModel: return " + replayed + ", mission "
+                + (m.tableColored && m.chairColored && m.doorOpen ? "complete" : "not completed"));
+        m.resetToLayout();
+        MissionPlanner.Plan best = m.missionPlanner.plan(m, 0);
+        if (best != null) System.out.println("Mission plan: " + best.steps + " steps, return " + best.reward);
+
+        if (policy != null) {
+            ql.exportPolicy(q, cfg.initialQ, policy);
+            System.out.println("Policy written to " + policy);
+        }
+    }
+
+    // runs action terms through the model with GridEnv's rewards for agent 0
+    static double replay(GridEnv.GridModel m, List<String> actions) {
+        double ret = 0.0;
+        for (String a : actions) {
+            String name = a.substring(0, a.indexOf('('));
+            String arg = a.substring(a.indexOf('(') + 1, a.length() - 1);
+            int mask = GridEnv.GridModel.objectMask(arg);
+            jason.environment.grid.Location l = m.getAgPos(0);
+            double r;
+            switch (name) {
+                case "move": {
+                    int d = arg.equals("up") ? UP : arg.equals("down") ? DOWN : arg.equals("left") ? LEFT : RIGHT;
+                    r = m.moveAgent(0, l.x + LiteralPool.DX[d], l.y + LiteralPool.DY[d]) ? GridEnv.REWARD_OK : GridEnv.REWARD_FAILED;
+                    break;
+                }
+                case "pick":  r = m.pickAtAgent(0, mask) ? GridEnv.REWARD_OK : GridEnv.REWARD_FAILED; break;
+                case "drop":  r = m.dropAtAgent(0, mask) ? GridEnv.REWARD_OK : GridEnv.REWARD_FAILED; break;
+                case "paint": r = m.paintTarget(0, mask) ? GridEnv.REWARD_PAINT : GridEnv.REWARD_FAILED; break;
+                default:      r = mask == GridEnv.DOOR && m.openDoor(0) ? GridEnv.REWARD_OPEN : GridEnv.REWARD_FAILED;
+            }
+            ret += r + m.carryingReward(0);
+            if (m.tableColored && m.chairColored && m.doorOpen) break;
+        }
+        return ret;
+    }
+}
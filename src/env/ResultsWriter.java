@@ -0,0 +1,74 @@
+package env;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+//Streams per-episode returns to a file through a large buffer, so million-episode runs keep constant
+//memory and do no console I/O per episode. The format follows the file name:
+//  *.csv  "episode,return" rows
+//  *.bin  "GRR1" magic, int format version, long seed, then one big-endian double per episode in
+//         episode order (8 bytes per episode; episode numbers are implicit)
+
+abstract class ResultsWriter implements Closeable {
+
+    static final int MAGIC = 0x47525231; // "GRR1"
+    static final int VERSION = 1;
+    private static final int BUFFER = 1 << 16;
+
+    abstract void write(int episode, double episodeReturn) throws IOException;
+
+    static ResultsWriter open(Path file, long seed) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        return file.toString().toLowerCase().endsWith(".bin") ? new Binary(file, seed) : new Csv(file);
+    }
+
+    private static final class Csv extends ResultsWriter {
+        private final Writer out;
+        private final StringBuilder row = new StringBuilder(32);
+
+        Csv(Path file) throws IOException {
+            out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), BUFFER);
+            out.write("episode,return\n");
+        }
+
+        @Override
+        void write(int episode, double episodeReturn) throws IOException {
+            row.setLength(0);
+            row.append(episode).append(',').append(episodeReturn).append('\n');
+            out.append(row);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static final class Binary extends ResultsWriter {
+        private final DataOutputStream out;
+
+        Binary(Path file, long seed) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+        }
+
+        @Override
+        void write(int episode, double episodeReturn) throws IOException {
+            out.writeDouble(episodeReturn);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
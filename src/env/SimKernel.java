@@ -0,0 +1,282 @@
+package env;
+
+import java.util.Arrays;
+
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Atom;
+import jason.asSyntax.Structure;
+import jason.environment.grid.Location;
+
+//The whole single-agent episode state packed in one long, with a pure step function that pays exactly
+//what GridEnv.executeAction pays for the same primitive action (action reward plus carrying reward,
+//one step counted). Copying a state is copying a long, so lookahead and rollouts never touch a GridModel.
+//  bits (low to high): agent cell | BRUSH | KEY | CODE | COLOR location | flags (3) | steps (the rest)
+//  an item location is a cell index, CARRIED or ABSENT; cell fields are wide enough for cells + 2 values
+//Walls are fixed per kernel. Layouts need at most one instance per item type, at most one door and at
+//most MAX_CELLS cells, so that 16 bits stay for the step counter (which saturates).
+//SimKernelCheck replays random action sequences through GridEnv and this kernel side by side.
+
+final class SimKernel {
+
+    static final int NOOP = 0, UP = 1, DOWN = 2, LEFT = 3, RIGHT = 4;
+    static final int PICK = 5;   // PICK + item
+    static final int DROP = 9;   // DROP + item
+    static final int PAINT_TABLE = 13, PAINT_CHAIR = 14, OPEN_DOOR = 15;
+    static final int ACTIONS = 16;
+
+    // item order in the state and in PICK / DROP offsets
+    static final int[] ITEMS = {GridEnv.BRUSH, GridEnv.KEY, GridEnv.CODE, GridEnv.COLOR};
+    private static final int B = 0, K = 1, CD = 2, CL = 3;
+
+    static final int TABLE_COLORED = 1, CHAIR_COLORED = 2, DOOR_OPEN = 4, ALL_DONE = 7;
+    static final int MAX_CELLS = 510;
+
+    final int width, height, cells;
+    final int carried, absent;            // item location values
+    private final int bits;               // width of a cell field
+    private final long cellMask;
+    private final int flagShift, stepShift;
+    private final long maxSteps;
+    private final int[] next;             // next[cell * 4 + dir]: target cell, -1 outside or wall
+    private final boolean[] table, chair;
+    private final int[] tableCells, chairCells;
+    private final int door;               // -1 if none
+    private final long initial;
+    private final int[] dist;             // dist[a * cells + b]: BFS steps, UNREACHABLE if cut off
+
+    SimKernel(Layout layout) {
+        width = layout.width();
+        height = layout.height();
+        cells = width * height;
+        if (cells > MAX_CELLS) {
+            throw new IllegalArgumentException("layout too large for a packed state: " + width + "x" + height);
+        }
+        carried = cells;
+        absent = cells + 1;
+        bits = 32 - Integer.numberOfLeadingZeros(absent);
+        cellMask = (1L << bits) - 1;
+        flagShift = 5 * bits;
+        stepShift = flagShift + 3;
+        maxSteps = (1L << (64 - stepShift)) - 1;
+
+        boolean[] wall = new boolean[cells];
+        for (int i = 0; i < layout.wallCount(); i++) wall[layout.wallCell(i)] = true;
+        next = new int[cells * 4];
+        int[] dx = {0, 0, -1, 1}, dy = {-1, 1, 0, 0}; // UP, DOWN, LEFT, RIGHT
+        for (int c = 0; c < cells; c++) {
+            int x = c % width, y = c / width;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + dx[d], ny = y + dy[d];
+                boolean ok = nx >= 0 && ny >= 0 && nx < width && ny < height && !wall[ny * width + nx];
+                next[c * 4 + d] = ok ? ny * width + nx : -1;
+            }
+        }
+
+        table = new boolean[cells];
+        chair = new boolean[cells];
+        int nt = 0, nc = 0;
+        int d = -1;
+        int[] item = {absent, absent, absent, absent};
+        for (int i = 0; i < layout.objectCount(); i++) {
+            int m = layout.objectMask(i), c = layout.objectCell(i);
+            for (int k = 0; k < ITEMS.length; k++) {
+                if (m != ITEMS[k]) continue;
+                if (item[k] != absent) throw new IllegalArgumentException("more than one " + symbol(k) + " in the layout");
+                item[k] = c;
+            }
+            if (m == GridEnv.TABLE && !table[c]) { table[c] = true; nt++; }
+            if (m == GridEnv.CHAIR && !chair[c]) { chair[c] = true; nc++; }
+            if (m == GridEnv.DOOR) {
+                if (d >= 0) throw new IllegalArgumentException("more than one door in the layout");
+                d = c;
+            }
+        }
+        door = d;
+        tableCells = new int[nt];
+        chairCells = new int[nc];
+        for (int c = 0, i = 0, j = 0; c < cells; c++) {
+            if (table[c]) tableCells[i++] = c;
+            if (chair[c]) chairCells[j++] = c;
+        }
+
+        long s = layout.agentCell();
+        for (int k = 0; k < ITEMS.length; k++) s = withItem(s, k, item[k]);
+        initial = s;
+
+        // all pairs: at most MAX_CELLS BFS runs over at most MAX_CELLS cells
+        dist = new int[cells * cells];
+        Arrays.fill(dist, DistanceOracle.UNREACHABLE);
+        int[] queue = new int[cells];
+        for (int from = 0; from < cells; from++) {
+            if (wall[from]) continue;
+            int base = from * cells, head = 0, tail = 0;
+            dist[base + from] = 0;
+            queue[tail++] = from;
+            while (head < tail) {
+                int c = queue[head++];
+                for (int dir = 0; dir < 4; dir++) {
+                    int n = next[c * 4 + dir];
+                    if (n < 0 || dist[base + n] != DistanceOracle.UNREACHABLE) continue;
+                    dist[base + n] = dist[base + c] + 1;
+                    queue[tail++] = n;
+                }
+            }
+        }
+    }
+
+    // kernel for the model's current walls and objects (items lying on the map, tables, chairs, door);
+    // states still come from encode, since the snapshot knows nothing about inventories
+    static SimKernel forModel(GridEnv.GridModel m) {
+        int[] walls = m.objectCells(GridEnv.OBST);
+        int[] masks = {GridEnv.BRUSH, GridEnv.KEY, GridEnv.CODE, GridEnv.COLOR, GridEnv.TABLE, GridEnv.CHAIR, GridEnv.DOOR};
+        int n = 0;
+        for (int mask : masks) n += m.objectCells(mask).length;
+        int[] objMasks = new int[n], objCells = new int[n];
+        n = 0;
+        for (int mask : masks) {
+            for (int c : m.objectCells(mask)) {
+                objMasks[n] = mask;
+                objCells[n++] = c;
+            }
+        }
+        Location a = m.getAgPos(0);
+        return new SimKernel(new Layout(m.getWidth(), m.getHeight(), a.y * m.getWidth() + a.x, walls, objMasks, objCells));
+    }
+
+    // ===== state access =====
+
+    long initial()                 { return initial; }
+    int agent(long s)              { return (int) (s & cellMask); }
+    int item(long s, int k)        { return (int) (s >>> (k + 1) * bits & cellMask); }
+    boolean carries(long s, int k) { return item(s, k) == carried; }
+    int flags(long s)              { return (int) (s >>> flagShift) & 7; }
+    int steps(long s)              { return (int) (s >>> stepShift); }
+    boolean done(long s)           { return flags(s) == ALL_DONE; }
+
+    private long withItem(long s, int k, int v) {
+        int shift = (k + 1) * bits;
+        return (s & ~(cellMask << shift)) | (long) v << shift;
+    }
+
+    // s without its step counter, to compare positions
+    long position(long s)          { return s & ((1L << stepShift) - 1); }
+
+    // neighbour of cell in direction UP..RIGHT, -1 if outside or a wall
+    int neighbour(int cell, int move) { return next[cell * 4 + move - UP]; }
+    int distance(int from, int to)    { return dist[from * cells + to]; }
+    boolean isTable(int cell)         { return table[cell]; }
+    boolean isChair(int cell)         { return chair[cell]; }
+    int[] tableCells()                { return tableCells; }
+    int[] chairCells()                { return chairCells; }
+    int door()                        { return door; }
+
+    int carriedCount(long s) {
+        int n = 0;
+        for (int k = 0; k < ITEMS.length; k++) if (item(s, k) == carried) n++;
+        return n;
+    }
+
+    // state of agent ag in a live model; the step counter is passed in (GridEnv keeps it per agent)
+    long encode(GridEnv.GridModel m, int ag, int steps) {
+        Location a = m.getAgPos(ag);
+        long s = a.y * width + a.x;
+        for (int k = 0; k < ITEMS.length; k++) {
+            int v = absent;
+            if (m.carries(ag, ITEMS[k])) {
+                v = carried;
+            } else {
+                int[] cs = m.objectCells(ITEMS[k]);
+                if (cs.length > 1) throw new IllegalStateException("more than one " + symbol(k) + " on the map");
+                if (cs.length == 1) v = cs[0];
+            }
+            s = withItem(s, k, v);
+        }
+        int f = (m.tableColored ? TABLE_COLORED : 0) | (m.chairColored ? CHAIR_COLORED : 0) | (m.doorOpen ? DOOR_OPEN : 0);
+        return s | (long) f << flagShift | Math.min(steps, maxSteps) << stepShift;
+    }
+
+    // ===== transition =====
+
+    // applies action a in state s, writes the next state to out[0] and returns GridEnv's reward
+    double step(long s, int a, long[] out) {
+        int cell = agent(s);
+        double r;
+        if (a == NOOP) {
+            r = GridEnv.REWARD_NOOP;
+        } else if (a <= RIGHT) {
+            int n = next[cell * 4 + a - UP];
+            if (n >= 0) {
+                s = (s & ~cellMask) | n;
+                r = GridEnv.REWARD_OK;
+            } else r = GridEnv.REWARD_FAILED;
+        } else if (a < DROP) {
+            int k = a - PICK;
+            if (carriedCount(s) < GridEnv.GridModel.MAX_CARRY && item(s, k) == cell) {
+                s = withItem(s, k, carried);
+                r = GridEnv.REWARD_OK;
+            } else r = GridEnv.REWARD_FAILED;
+        } else if (a < PAINT_TABLE) {
+            int k = a - DROP;
+            if (item(s, k) == carried && !itemAt(s, cell)) {
+                s = withItem(s, k, cell);
+                r = GridEnv.REWARD_OK;
+            } else r = GridEnv.REWARD_FAILED;
+        } else if (a == PAINT_TABLE || a == PAINT_CHAIR) {
+            boolean[] target = a == PAINT_TABLE ? table : chair;
+            if (carries(s, B) && carries(s, CL) && target[cell]) {
+                s |= (long) (a == PAINT_TABLE ? TABLE_COLORED : CHAIR_COLORED) << flagShift;
+                r = GridEnv.REWARD_PAINT;
+            } else r = GridEnv.REWARD_FAILED;
+        } else if (a == OPEN_DOOR) {
+            if (carries(s, K) && carries(s, CD) && door >= 0
+                    && Math.abs(cell % width - door % width) + Math.abs(cell / width - door / width) == 1) {
+                s |= (long) DOOR_OPEN << flagShift;
+                r = GridEnv.REWARD_OPEN;
+            } else r = GridEnv.REWARD_FAILED;
+        } else {
+            throw new IllegalArgumentException("no kernel action " + a);
+        }
+
+        int n = carriedCount(s);
+        long steps = (s >>> stepShift) + 1;
+        out[0] = (s & ((1L << stepShift) - 1)) | Math.min(steps, maxSteps) << stepShift;
+        return r + GridEnv.rewardForCarrying(n);
+    }
+
+    private boolean itemAt(long s, int cell) {
+        for (int k = 0; k < ITEMS.length; k++) if (item(s, k) == cell) return true;
+        return false;
+    }
+
+    // ===== GridEnv actions =====
+
+    private static final String[] SYMBOLS = {"b", "k", "cd", "cl"};
+
+    static String symbol(int item) {
+        return SYMBOLS[item];
+    }
+
+    // the GridEnv action a stands for
+    static Structure action(int a) {
+        if (a == NOOP) return ASSyntax.createStructure("noop");
+        if (a <= RIGHT) return ASSyntax.createStructure("move", new Atom(new String[] {"up", "down", "left", "right"}[a - UP]));
+        if (a < DROP) return ASSyntax.createStructure("pick", new Atom(SYMBOLS[a - PICK]));
+        if (a < PAINT_TABLE) return ASSyntax.createStructure("drop", new Atom(SYMBOLS[a - DROP]));
+        if (a == PAINT_TABLE) return ASSyntax.createStructure("paint", new Atom("t"));
+        if (a == PAINT_CHAIR) return ASSyntax.createStructure("paint", new Atom("ch"));
+        return ASSyntax.createStructure("open", new Atom("d"));
+    }
+
+    String toString(long s) {
+        StringBuilder sb = new StringBuilder("agent=").append(cellString(agent(s)));
+        for (int k = 0; k < ITEMS.length; k++) {
+            int v = item(s, k);
+            sb.append(' ').append(SYMBOLS[k]).append('=').append(v == carried ? "carried" : v == absent ? "absent" : cellString(v));
+        }
+        return sb.append(" flags=").append(flags(s)).append(" steps=").append(steps(s)).toString();
+    }
+
+    private String cellString(int c) {
+        return "(" + (c % width + 1) + "," + (height - c / width) + ")"; // PDF coords
+    }
+}
@@ -0,0 +1,152 @@
+package env;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import jason.asSyntax.Literal;
+import jason.asSyntax.NumberTerm;
+import jason.asSyntax.Structure;
+import jason.environment.grid.Location;
+
+//Differential check of SimKernel against GridEnv: random action sequences go through
+//GridEnv.executeAction and SimKernel.step side by side, and after every action the published reward, the
+//step percept and the kernel state of the live model must equal the kernel's. Random play alone almost
+//never colors or opens anything, so every other episode mostly follows MissionPlanner's plan (replanned
+//after each random action); the others are pure noise with half of the actions being moves.
+//Exits with status 1 on the first mismatch.
+//
+// usage: SimKernelCheck [--episodes N] [--steps M] [--seed S] [--layout spec]...   (default: pdf and three
+//                       random layouts)
+
+public final class SimKernelCheck {
+
+    public static void main(String[] args) throws Exception {
+        int episodes = 2000, steps = 300;
+        long seed = 1;
+        List<String> layouts = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--episodes": episodes = Integer.parseInt(args[++i]); break;
+                case "--steps":    steps = Integer.parseInt(args[++i]);    break;
+                case "--seed":     seed = Long.parseLong(args[++i]);       break;
+                case "--layout":   layouts.add(args[++i]);                 break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (layouts.isEmpty()) {
+            layouts.add("pdf");
+            layouts.add("random:6x6:0.2:1");
+            layouts.add("random:12x9:0.25:2");
+            layouts.add("random:20x20:0.2:3");
+        }
+
+        long checked = 0;
+        for (String spec : layouts) {
+            String failure = check(spec, episodes, steps, seed);
+            if (failure != null) {
+                System.out.println("MISMATCH on " + spec + ": " + failure);
+                System.exit(1);
+            }
+            checked += (long) episodes * steps;
+            System.out.println(spec + ": " + episodes + " episodes x " + steps + " actions match");
+        }
+        System.out.println("SimKernel matches GridEnv on " + checked + " actions");
+    }
+
+    // null if every action matched, else a description of the first mismatch
+    static String check(String spec, int episodes, int steps, long seed) throws Exception {
+        GridEnv env = new GridEnv();
+        env.init(new String[] {"headless=true", "layout=" + spec});
+        try {
+            GridEnv.GridModel m = env.model();
+            SimKernel k = new SimKernel(m.layout());
+            SplittableRandom rng = new SplittableRandom(seed);
+            long[] out = new long[1];
+
+            int[] plan = new int[0];
+            int completed = 0;
+            int next = 0;
+            for (int ep = 0; ep < episodes; ep++) {
+                env.resetEpisode();
+                boolean guided = (ep & 1) == 0;
+                plan = new int[0];
+                next = 0;
+                long s = k.initial();
+                long live = k.encode(m, 0, 0);
+                if (live != s) return "episode " + ep + " starts at " + k.toString(live) + ", kernel " + k.toString(s);
+
+                for (int t = 0; t < steps; t++) {
+                    int a;
+                    if (guided && rng.nextInt(5) > 0) {
+                        if (next == plan.length) {
+                            plan = planActions(m);
+                            next = 0;
+                        }
+                        a = next < plan.length ? plan[next++] : rng.nextInt(SimKernel.ACTIONS);
+                    } else {
+                        a = rng.nextBoolean() ? SimKernel.UP + rng.nextInt(4) : rng.nextInt(SimKernel.ACTIONS);
+                        next = plan.length; // replan from wherever this leaves the agent
+                    }
+                    double r = k.step(s, a, out);
+                    Structure action = SimKernel.action(a);
+                    env.executeAction(GridEnv.AG_NAME, action);
+
+                    double envReward = Double.NaN;
+                    int envSteps = -1;
+                    for (Literal l : env.getPercepts(GridEnv.AG_NAME)) {
+                        if (l.getFunctor().equals("reward")) envReward = ((NumberTerm) l.getTerm(0)).solve();
+                        if (l.getFunctor().equals("step")) envSteps = (int) ((NumberTerm) l.getTerm(0)).solve();
+                    }
+                    live = k.encode(m, 0, envSteps);
+                    if (r != envReward || live != out[0]) {
+                        return String.format("episode %d step %d: %s from %s%n  env:    reward %s, %s%n  kernel: reward %s, %s",
+                                ep, t, action, k.toString(s), envReward, k.toString(live), r, k.toString(out[0]));
+                    }
+                    s = out[0];
+                }
+                if (k.done(s)) completed++;
+            }
+            System.out.println("  " + spec + ": missions completed in " + completed + " of " + episodes + " episodes");
+            return null;
+        } finally {
+            env.stop();
+        }
+    }
+
+    // MissionPlanner's plan for agent 0 as kernel actions, moves expanded along BFS paths
+    private static int[] planActions(GridEnv.GridModel m) {
+        MissionPlanner.Plan p = m.missionPlanner.plan(m, 0);
+        if (p == null) return new int[0];
+        int w = m.getWidth();
+        Location start = m.getAgPos(0);
+        int at = start.y * w + start.x;
+        List<Integer> out = new ArrayList<>();
+        for (int op : p.ops) {
+            int arg = MissionPlanner.arg(op);
+            switch (MissionPlanner.kind(op)) {
+                case MissionPlanner.MOVE: {
+                    int[] path = m.oracle.path(m, at % w, at / w, arg % w, arg / w);
+                    for (int i = 1; i < path.length; i++) {
+                        int d = path[i] - path[i - 1];
+                        out.add(d == -w ? SimKernel.UP : d == w ? SimKernel.DOWN : d == -1 ? SimKernel.LEFT : SimKernel.RIGHT);
+                    }
+                    at = arg;
+                    break;
+                }
+                case MissionPlanner.PICK:  out.add(SimKernel.PICK + item(arg)); break;
+                case MissionPlanner.DROP:  out.add(SimKernel.DROP + item(arg)); break;
+                case MissionPlanner.PAINT: out.add(arg == GridEnv.TABLE ? SimKernel.PAINT_TABLE : SimKernel.PAINT_CHAIR); break;
+                default:                   out.add(SimKernel.OPEN_DOOR);
+            }
+        }
+        int[] actions = new int[out.size()];
+        for (int i = 0; i < actions.length; i++) actions[i] = out.get(i);
+        return actions;
+    }
+
+    private static int item(int mask) {
+        for (int k = 0; k < SimKernel.ITEMS.length; k++) if (SimKernel.ITEMS[k] == mask) return k;
+        throw new IllegalArgumentException("not an item: " + mask);
+    }
+}
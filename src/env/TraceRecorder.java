@@ -0,0 +1,127 @@
+package env;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import jason.environment.grid.Location;
+
+//Binary trace of everything GridEnv executes (trace=<file> init arg), for TraceReplayer and offline
+//analysis. Records are fixed-width and go through a 1 MiB direct buffer into a FileChannel, so an action
+//costs one short synchronized block and a few puts; nothing is formatted or allocated per action.
+//
+//File: 32-byte header, then 32-byte records, all little-endian.
+//  header  int "GRT1" | int version | int width | int height | int agents | int record size | long wall hash
+//  record  int episode | int step | short agent | byte op | byte via | int arg | double reward
+//          | short x | short y | int state
+//x,y is the agent's position after the action (internal coords), state its inventory mask | world flags
+//(TABLE_DONE, CHAIR_DONE, DOOR_DONE). Every episode starts with an EPISODE record (arg = number of PLACE
+//records that follow), then one PLACE per agent start (arg 0) and per object (arg = object mask, x,y its
+//cell). Actions are recorded as primitive steps: move(X,Y) as the direction it tried (FAILED if it had
+//none, STAY if already there), follow and move_to as one MOVE per step, via telling which action issued
+//it. Episode controls (reset, next_episode) only show up as the next EPISODE; handlers added through
+//action= init args are OTHER records that TraceReplayer cannot re-run.
+
+final class TraceRecorder implements Closeable {
+
+    static final int MAGIC = 0x47525431; // "GRT1"
+    static final int VERSION = 1;
+    static final int HEADER = 32, RECORD = 32;
+
+    // record ops
+    static final byte NOOP = 0, MOVE = 1, PICK = 2, DROP = 3, PAINT = 4, OPEN = 5, OTHER = 6, EPISODE = 7, PLACE = 8;
+    // how a MOVE was issued
+    static final byte DIRECT = 0, GOTO = 1, FOLLOW = 2, MOVE_TO = 3;
+    // MOVE args besides LiteralPool directions: failed without trying a cell, move(X,Y) already at X,Y
+    static final int FAILED = -1, STAY = 4;
+    // world flags in the state field
+    static final int TABLE_DONE = 1, CHAIR_DONE = 2, DOOR_DONE = 4;
+
+    private static final int BUFFER = 1 << 20;
+    private static final int[] OBJECTS = {GridEnv.BRUSH, GridEnv.KEY, GridEnv.CODE, GridEnv.COLOR,
+                                          GridEnv.TABLE, GridEnv.CHAIR, GridEnv.DOOR};
+
+    private final Path file;
+    private final FileChannel ch;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+    private int episode = -1;
+    private long records;
+    private boolean failed;
+
+    private TraceRecorder(Path file, FileChannel ch) {
+        this.file = file;
+        this.ch = ch;
+    }
+
+    static TraceRecorder open(Path file, GridEnv.GridModel m) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        TraceRecorder t = new TraceRecorder(file, ch);
+        t.buf.putInt(MAGIC).putInt(VERSION).putInt(m.getWidth()).putInt(m.getHeight())
+             .putInt(m.getNbOfAgs()).putInt(RECORD).putLong(m.wallHash);
+        return t;
+    }
+
+    // EPISODE and PLACE records for the freshly reset model
+    synchronized void episodeStart(GridEnv.GridModel m) {
+        episode++;
+        int places = m.getNbOfAgs();
+        for (int mask : OBJECTS) places += m.objectCount(mask);
+        put(0, 0, EPISODE, DIRECT, places, 0.0, 0, 0, state(m, 0));
+        for (int ag = 0; ag < m.getNbOfAgs(); ag++) {
+            Location l = m.getAgPos(ag);
+            put(ag, 0, PLACE, DIRECT, 0, 0.0, l.x, l.y, state(m, ag));
+        }
+        int w = m.getWidth();
+        for (int mask : OBJECTS) {
+            for (int c : m.objectCells(mask)) put(0, 0, PLACE, DIRECT, mask, 0.0, c % w, c / w, 0);
+        }
+    }
+
+    // one executed step of agent ag, after the model was updated
+    synchronized void step(GridEnv.GridModel m, int ag, int steps, byte op, byte via, int arg, double reward) {
+        Location l = m.getAgPos(ag);
+        put(ag, steps, op, via, arg, reward, l.x, l.y, state(m, ag));
+    }
+
+    static int state(GridEnv.GridModel m, int ag) {
+        return m.inventory(ag) | (m.tableColored ? TABLE_DONE : 0) | (m.chairColored ? CHAIR_DONE : 0)
+                | (m.doorOpen ? DOOR_DONE : 0);
+    }
+
+    private void put(int ag, int steps, byte op, byte via, int arg, double reward, int x, int y, int state) {
+        if (failed) return;
+        if (buf.remaining() < RECORD) drain();
+        buf.putInt(episode).putInt(steps).putShort((short) ag).put(op).put(via).putInt(arg).putDouble(reward)
+           .putShort((short) x).putShort((short) y).putInt(state);
+        records++;
+    }
+
+    private void drain() {
+        buf.flip();
+        try {
+            while (buf.hasRemaining()) ch.write(buf);
+        } catch (IOException e) {
+            System.err.println("trace: cannot write " + file + ", recording stopped: " + e);
+            failed = true;
+        }
+        buf.clear();
+    }
+
+    synchronized long records() {
+        return records;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!ch.isOpen()) return;
+        drain();
+        ch.close();
+    }
+}
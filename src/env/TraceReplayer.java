@@ -0,0 +1,245 @@
+package env;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import jason.environment.grid.Location;
+
+//Replays a TraceRecorder file against a bare GridModel: every episode is rebuilt from its PLACE records,
+//every step re-executed with GridEnv's reward rules, and the reward (bit for bit), position and state
+//checked against what was recorded. No agents, percepts or Jason runtime are involved, so it runs at
+//millions of steps per second; --repeat N replays the file N times to measure just that.
+//The file is memory-mapped and read in place. Episodes with OTHER records (handlers added through action=
+//init args) are skipped from that record on. With several agents acting concurrently the record order is
+//the order they took the recorder's lock, which can differ from the order their moves reached the model;
+//such races show up as mismatches.
+//
+// usage: TraceReplayer <trace> [--layout spec] [--repeat N] [--report N]   (layout defaults to pdf, the
+//                      walls must be those the trace was recorded on)
+
+public final class TraceReplayer {
+
+    private static final long CHUNK = (Integer.MAX_VALUE / TraceRecorder.RECORD) * (long) TraceRecorder.RECORD;
+
+    static final class Result {
+        long records, steps, episodes, skipped, mismatches;
+        double rewardSum;
+        long nanos;
+
+        double meanReturn() {
+            return episodes == 0 ? 0.0 : rewardSum / episodes;
+        }
+
+        double stepsPerSecond() {
+            return nanos == 0 ? 0.0 : steps * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d records, %d episodes (%d skipped), %d steps, %d mismatches, mean return %.4f, "
+                    + "%.1f ms (%.2f M steps/s)", records, episodes, skipped, steps, mismatches, meanReturn(),
+                    nanos / 1e6, stepsPerSecond() / 1e6);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: TraceReplayer <trace> [--layout spec] [--repeat N] [--report N]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        String spec = "pdf";
+        int repeat = 1, report = 10;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--layout": spec = args[++i];                    break;
+                case "--repeat": repeat = Integer.parseInt(args[++i]); break;
+                case "--report": report = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        Layout base = Layout.fromSpec(spec);
+        Result r = null;
+        for (int i = 0; i < repeat; i++) {
+            r = replay(file, base, i == 0 ? report : 0, System.out);
+            if (repeat > 1) System.out.printf("pass %d: %.1f ms (%.2f M steps/s)%n", i + 1, r.nanos / 1e6, r.stepsPerSecond() / 1e6);
+        }
+        System.out.println(file + ": " + r);
+        if (r.mismatches > 0) System.exit(1);
+    }
+
+    // replays file on layout base (walls must match the trace), printing up to report mismatches to out
+    static Result replay(Path file, Layout base, int report, PrintStream out) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            MappedByteBuffer b = map(ch, 0, size);
+            if (size < TraceRecorder.HEADER || b.getInt(0) != TraceRecorder.MAGIC) {
+                throw new IOException(file + " is not a trace");
+            }
+            if (b.getInt(4) != TraceRecorder.VERSION || b.getInt(20) != TraceRecorder.RECORD) {
+                throw new IOException(file + ": unsupported trace version " + b.getInt(4));
+            }
+            int w = b.getInt(8), h = b.getInt(12), agents = b.getInt(16);
+            if (w != base.width() || h != base.height() || b.getLong(24) != base.wallHash()) {
+                throw new IOException(file + " was recorded on other walls than " + base);
+            }
+
+            Replay r = new Replay(base, agents, report, out);
+            long t0 = System.nanoTime();
+            long at = TraceRecorder.HEADER;
+            while (at + TraceRecorder.RECORD <= size) {
+                long len = Math.min(CHUNK, (size - at) / TraceRecorder.RECORD * TraceRecorder.RECORD);
+                b = map(ch, at, len);
+                r.run(b, at);
+                at += len;
+            }
+            r.finishEpisode();
+            r.result.nanos = System.nanoTime() - t0;
+            return r.result;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel ch, long at, long len) throws IOException {
+        MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, at, len);
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        return b;
+    }
+
+    // replay state carried across mapped chunks (an episode's PLACE records may straddle two)
+    private static final class Replay {
+        final Layout base;
+        final GridEnv.GridModel m;
+        final int report;
+        final PrintStream out;
+        final Result result = new Result();
+
+        int episode = -1;
+        int places;           // PLACE records still to come for the current episode
+        boolean skipping;     // the rest of the current episode cannot be checked
+        int agent0Cell, objects;
+        int[] masks = new int[16], cells = new int[16];
+        int[] agentCells;
+
+        Replay(Layout base, int agents, int report, PrintStream out) {
+            this.base = base;
+            this.m = new GridEnv.GridModel(base, GridEnv.GridModel.Storage.parse(null), agents);
+            this.report = report;
+            this.out = out;
+            this.agentCells = new int[agents];
+        }
+
+        void run(MappedByteBuffer b, long offset) {
+            int w = m.getWidth();
+            for (int p = 0; p + TraceRecorder.RECORD <= b.limit(); p += TraceRecorder.RECORD) {
+                result.records++;
+                int ep = b.getInt(p);
+                int ag = b.getShort(p + 8);
+                byte op = b.get(p + 10);
+                int arg = b.getInt(p + 12);
+                double reward = b.getDouble(p + 16);
+                int x = b.getShort(p + 24), y = b.getShort(p + 26);
+                int state = b.getInt(p + 28);
+
+                if (op == TraceRecorder.EPISODE) {
+                    finishEpisode();
+                    episode = ep;
+                    places = arg;
+                    objects = 0;
+                    skipping = false;
+                    if (places == 0) startEpisode(offset + p);
+                    continue;
+                }
+                if (places > 0) {
+                    if (op != TraceRecorder.PLACE) {
+                        mismatch(offset + p, "episode " + episode + " has fewer PLACE records than announced");
+                        places = 0;
+                        skipping = true;
+                        continue;
+                    }
+                    if (arg == 0) {
+                        if (ag == 0) agent0Cell = y * w + x;
+                        if (ag < agentCells.length) agentCells[ag] = y * w + x;
+                    } else {
+                        if (objects == masks.length) {
+                            masks = Arrays.copyOf(masks, 2 * objects);
+                            cells = Arrays.copyOf(cells, 2 * objects);
+                        }
+                        masks[objects] = arg;
+                        cells[objects++] = y * w + x;
+                    }
+                    if (--places == 0) startEpisode(offset + p);
+                    continue;
+                }
+                if (skipping || episode < 0) continue;
+                if (op == TraceRecorder.OTHER) {
+                    skipping = true;
+                    result.skipped++;
+                    continue;
+                }
+
+                double r = step(ag, op, arg);
+                result.steps++;
+                result.rewardSum += reward;
+                Location l = m.getAgPos(ag);
+                int s = TraceRecorder.state(m, ag);
+                if (Double.doubleToLongBits(r) != Double.doubleToLongBits(reward) || l.x != x || l.y != y || s != state) {
+                    mismatch(offset + p, String.format("episode %d step %d agent %d op %d arg %d:%n"
+                            + "  trace:  reward %s at %d,%d state %d%n  replay: reward %s at %d,%d state %d",
+                            ep, b.getInt(p + 4), ag, op, arg, reward, x, y, state, r, l.x, l.y, s));
+                    skipping = true; // the rest of the episode starts from a different state
+                }
+            }
+        }
+
+        private void startEpisode(long at) {
+            m.resetToLayout(base.withStart(agent0Cell, Arrays.copyOf(masks, objects),
+                    Arrays.copyOf(cells, objects)));
+            int w = m.getWidth();
+            for (int ag = 1; ag < agentCells.length; ag++) {
+                Location l = m.getAgPos(ag);
+                if (l.y * w + l.x != agentCells[ag]) {
+                    mismatch(at, "episode " + episode + ": agent " + ag + " starts at " + l.x + "," + l.y
+                            + ", trace has " + agentCells[ag] % w + "," + agentCells[ag] / w);
+                    skipping = true;
+                }
+            }
+        }
+
+        void finishEpisode() {
+            if (episode >= 0) result.episodes++;
+        }
+
+        // GridEnv's handler reward for the step, plus the carrying penalty it adds to every step
+        private double step(int ag, byte op, int arg) {
+            double r;
+            switch (op) {
+                case TraceRecorder.NOOP: r = GridEnv.REWARD_NOOP; break;
+                case TraceRecorder.MOVE:
+                    if (arg >= 0 && arg < 4) {
+                        Location a = m.getAgPos(ag);
+                        r = m.moveAgent(ag, a.x + LiteralPool.DX[arg], a.y + LiteralPool.DY[arg]) ? GridEnv.REWARD_OK : GridEnv.REWARD_FAILED;
+                    } else {
+                        r = arg == TraceRecorder.STAY ? GridEnv.REWARD_OK : GridEnv.REWARD_FAILED;
+                    }
+                    break;
+                case TraceRecorder.PICK:  r = m.pickAtAgent(ag, arg) ? GridEnv.REWARD_OK : GridEnv.REWARD_FAILED; break;
+                case TraceRecorder.DROP:  r = m.dropAtAgent(ag, arg) ? GridEnv.REWARD_OK : GridEnv.REWARD_FAILED; break;
+                case TraceRecorder.PAINT: r = m.paintTarget(ag, arg) ? GridEnv.REWARD_PAINT : GridEnv.REWARD_FAILED; break;
+                case TraceRecorder.OPEN:  r = arg == GridEnv.DOOR && m.openDoor(ag) ? GridEnv.REWARD_OPEN : GridEnv.REWARD_FAILED; break;
+                default: throw new IllegalStateException("unexpected trace op " + op);
+            }
+            return r + m.carryingReward(ag);
+        }
+
+        private void mismatch(long at, String what) {
+            if (result.mismatches++ < report) out.println("mismatch at byte " + at + ", " + what);
+        }
+    }
+}
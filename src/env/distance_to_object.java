@@ -0,0 +1,55 @@
+package env;
+
+import jason.asSemantics.DefaultInternalAction;
+import jason.asSemantics.TransitionSystem;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Atom;
+import jason.asSyntax.NumberTerm;
+import jason.asSyntax.Term;
+import jason.environment.grid.Location;
+
+// Distance (in steps) to an object, read from the model's precomputed BFS fields instead of running A*.
+//   .distance_to_object(Obj, D)          from the agent's current position
+//   .distance_to_object(CX, CY, Obj, D)  from PDF position (CX,CY)
+// An extra last argument, .distance_to_object(Obj, D, Dir) or .distance_to_object(CX, CY, Obj, D, Dir),
+// also gives the first move of a shortest path (up, down, left, right, or none when already there), so
+// an agent can walk to an object with move(Dir) at O(1) per step and no search.
+// Obj is an object symbol (b, k, cd, cl, t, ch, d or the long names). Fails if the object is absent
+// or cannot be reached.
+public class distance_to_object extends DefaultInternalAction {
+
+    private static final Atom NONE = new Atom("none");
+
+    @Override
+    public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
+        GridEnv.GridModel m = GridEnv.modelOf(ts);
+        if (m == null) return false;
+
+        int x, y, o;
+        if (args.length >= 4) {
+            x = m.ix((int) ((NumberTerm) args[0]).solve());
+            y = m.iy((int) ((NumberTerm) args[1]).solve());
+            o = 2;
+        } else {
+            int ag = m.agentId(ts.getAgArch().getAgName());
+            Location a = ag < 0 ? null : m.getAgPos(ag);
+            if (a == null) return false;
+            x = a.x;
+            y = a.y;
+            o = 0;
+        }
+
+        int mask = GridEnv.GridModel.objectMask(args[o].toString().replace("\"", ""));
+        if (mask == 0) return false;
+
+        int d = m.distanceToObject(x, y, mask);
+        if (d == DistanceOracle.UNREACHABLE) return false;
+        if (!un.unifies(args[o + 1], ASSyntax.createNumber(d))) return false;
+        if (args.length == o + 2) return true;
+
+        int next = m.nextStepToObject(x, y, mask);
+        Term dir = next < 0 ? NONE : PathCache.direction(y * m.getWidth() + x, next, m.getWidth());
+        return un.unifies(args[o + 2], dir);
+    }
+}
@@ -0,0 +1,39 @@
+package env;
+
+import jason.asSemantics.DefaultInternalAction;
+import jason.asSemantics.TransitionSystem;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.ListTerm;
+import jason.asSyntax.ListTermImpl;
+import jason.asSyntax.NumberTerm;
+import jason.asSyntax.Term;
+
+// Next action for the calling agent from a time-budgeted parallel Monte Carlo tree search (see MctsPlanner).
+//   .plan_mcts(Action)
+//   .plan_mcts(Action, BudgetMs)         default budget 50 ms
+//   .plan_mcts(Action, BudgetMs, Plan)   Plan: the search's most visited action sequence, starting with Action
+// Actions are move(Dir) (Dir = up/down/left/right), pick(O), drop(O), paint(O) and open(d), each one a
+// valid do(A) action.
+// Fails when the mission is already complete or nothing can be done. Layouts over 510 cells are not
+// supported by the simulation kernel.
+public class plan_mcts extends DefaultInternalAction {
+
+    @Override
+    public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
+        GridEnv.GridModel m = GridEnv.modelOf(ts);
+        if (m == null) return false;
+
+        int ag = m.agentId(ts.getAgArch().getAgName());
+        if (ag < 0) return false;
+        long budget = args.length > 1 ? (long) ((NumberTerm) args[1]).solve() : MctsPlanner.DEFAULT_BUDGET_MS;
+        MctsPlanner.Result r = m.mctsPlanner.search(m, ag, budget);
+        if (r.action < 0) return false;
+
+        if (!un.unifies(args[0], SimKernel.action(r.action))) return false;
+        if (args.length < 3) return true;
+        ListTerm plan = new ListTermImpl();
+        for (int a : r.plan) plan.add(SimKernel.action(a));
+        return un.unifies(args[2], plan);
+    }
+}
@@ -0,0 +1,49 @@
+package env;
+
+import jason.asSemantics.DefaultInternalAction;
+import jason.asSemantics.TransitionSystem;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.ListTerm;
+import jason.asSyntax.ListTermImpl;
+import jason.asSyntax.Term;
+
+// Action sequence that colors the table and chair and opens the door, from the calling agent's current
+// position, inventory and world flags. It is the cheapest plan that never puts down an item it still
+// needs (see MissionPlanner for why that is not always optimal).
+//   .plan_mission(Plan)
+//   .plan_mission(Plan, Reward)   Reward: total reward GridEnv pays for executing Plan
+// Plan is a list of move_to(X,Y) (PDF coords), pick(O), drop(O), paint(O) and open(d), each one a
+// valid do(A) action. Fails if the mission cannot be completed.
+public class plan_mission extends DefaultInternalAction {
+
+    @Override
+    public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
+        GridEnv.GridModel m = GridEnv.modelOf(ts);
+        if (m == null) return false;
+
+        int ag = m.agentId(ts.getAgArch().getAgName());
+        if (ag < 0) return false;
+        MissionPlanner.Plan p = m.missionPlanner.plan(m, ag);
+        if (p == null) return false;
+
+        int w = m.getWidth();
+        ListTerm actions = new ListTermImpl();
+        for (int op : p.ops) {
+            int arg = MissionPlanner.arg(op);
+            switch (MissionPlanner.kind(op)) {
+                case MissionPlanner.MOVE:
+                    actions.add(ASSyntax.createStructure("move_to",
+                            ASSyntax.createNumber(m.px(arg % w)), ASSyntax.createNumber(m.py(arg / w))));
+                    break;
+                case MissionPlanner.PICK:  actions.add(ASSyntax.createStructure("pick", LiteralPool.symbol(arg)));  break;
+                case MissionPlanner.DROP:  actions.add(ASSyntax.createStructure("drop", LiteralPool.symbol(arg)));  break;
+                case MissionPlanner.PAINT: actions.add(ASSyntax.createStructure("paint", LiteralPool.symbol(arg))); break;
+                default:                   actions.add(ASSyntax.createStructure("open", LiteralPool.symbol(arg)));  break;
+            }
+        }
+
+        if (!un.unifies(args[0], actions)) return false;
+        return args.length < 2 || un.unifies(args[1], ASSyntax.createNumber(p.reward));
+    }
+}
@@ -9,47 +9,46 @@ import jason.asSyntax.NumberTerm;
 import jason.asSyntax.Term;
 import jason.asSyntax.Atom;
 
-import java.util.List;
-
 public class plan_path extends DefaultInternalAction {
 
     @Override
     public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
-        // .plan_path(CX,CY,GX,GY,Path)
+        // .plan_path(CX,CY,GX,GY,Path) or .plan_path(CX,CY,GX,GY,Path,Engine) with Engine = grid | jgrapht | incremental
         int CX = (int) ((NumberTerm) args[0]).solve();
         int CY = (int) ((NumberTerm) args[1]).solve();
         int GX = (int) ((NumberTerm) args[2]).solve();
         int GY = (int) ((NumberTerm) args[3]).solve();
 
-        GridEnv.GridModel m = GridEnv.CURRENT_MODEL;
+        GridEnv.GridModel m = GridEnv.modelOf(ts);
         if (m == null) return false;
 
         // PDF -> internal
         int sx = m.ix(CX), sy = m.iy(CY);
         int gx = m.ix(GX), gy = m.iy(GY);
 
-        boolean[][] blocked = m.blockedGrid();
-
-        List<PathFinding.Cell> cells = PathFinding.findPath(sx, sy, gx, gy, blocked);
-        if (cells.isEmpty()) {
-            return un.unifies(args[4], new ListTermImpl());
+        PathFinding.Engine engine = m.pathEngine;
+        if (args.length > 5) engine = PathFinding.Engine.parse(args[5].toString().replace("\"", ""));
+
+        // the model's own engine goes through the shared path cache; incremental always uses the caller's
+        // own D* Lite searches, even when the model runs another engine
+        int ag = m.agentId(ts.getAgArch().getAgName());
+        int[] cells;
+        if (engine == PathFinding.Engine.INCREMENTAL && ag >= 0) {
+            cells = m.incrementalPath.path(m, ag, sx, sy, gx, gy);
+        } else if (engine == m.pathEngine) {
+            cells = ag >= 0 ? m.findPath(ag, sx, sy, gx, gy) : m.findPath(sx, sy, gx, gy);
+        } else {
+            cells = PathFinding.findPathIndices(sx, sy, gx, gy, m.blockedGrid(), engine);
+            m.searched(PathFinding.lastExpanded(), cells.length);
         }
 
         ListTerm pathDirs = new ListTermImpl();
 
         // Convert consecutive cells into directions
-        for (int i = 1; i < cells.size(); i++) {
-            PathFinding.Cell a = cells.get(i - 1);
-            PathFinding.Cell b = cells.get(i);
-
-            String dir;
-            if (b.x == a.x + 1 && b.y == a.y) dir = "right";
-            else if (b.x == a.x - 1 && b.y == a.y) dir = "left";
-            else if (b.x == a.x && b.y == a.y + 1) dir = "down";
-            else if (b.x == a.x && b.y == a.y - 1) dir = "up";
-            else continue;
-
-            pathDirs.add(new Atom(dir));
+        int w = m.getWidth();
+        for (int i = 1; i < cells.length; i++) {
+            Atom dir = PathCache.direction(cells[i - 1], cells[i], w);
+            if (dir != null) pathDirs.add(dir);
         }
 
         return un.unifies(args[4], pathDirs);
@@ -0,0 +1,45 @@
+package env;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Whole headless Experiment episodes per second (reset + random policy up to MAX_STEPS).
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExperimentBenchmark {
+
+    @Param({"pdf", "random:64x64:0.2:1"})
+    String layout;
+
+    private GridEnv.GridModel model;
+    private SplittableRandom rng;
+
+    @Setup
+    public void setup() throws Exception {
+        model = new GridEnv.GridModel(Layout.fromSpec(layout));
+        rng = new SplittableRandom(42);
+    }
+
+    @Benchmark
+    public double episode() {
+        model.resetToLayout();
+        return Experiment.runSingleEpisode(model, rng);
+    }
+}
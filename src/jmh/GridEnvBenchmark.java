@@ -0,0 +1,104 @@
+package env;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Structure;
+
+//GridEnv without a view: updatePercepts and one full executeAction step per action type.
+//Each benchmark keeps the world in a steady state (e.g. move up then down, pick then drop),
+//so the two-action benchmarks report the cost of two steps.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridEnvBenchmark {
+
+    @Param({"full", "delta"})
+    String percepts;
+
+    private GridEnv env;
+    private GridEnv.GridModel model;
+
+    private final Structure noop    = ASSyntax.createStructure("noop");
+    private final Structure up      = ASSyntax.createStructure("move", ASSyntax.createAtom("up"));
+    private final Structure down    = ASSyntax.createStructure("move", ASSyntax.createAtom("down"));
+    private final Structure towards = ASSyntax.createStructure("move", ASSyntax.createNumber(1), ASSyntax.createNumber(3));
+    private final Structure back    = ASSyntax.createStructure("move", ASSyntax.createNumber(1), ASSyntax.createNumber(1));
+    private final Structure pick    = ASSyntax.createStructure("pick", ASSyntax.createAtom("b"));
+    private final Structure drop    = ASSyntax.createStructure("drop", ASSyntax.createAtom("b"));
+    private final Structure paint   = ASSyntax.createStructure("paint", ASSyntax.createAtom("t"));
+    private final Structure open    = ASSyntax.createStructure("open", ASSyntax.createAtom("d"));
+
+    @Setup
+    public void setup() {
+        env = new GridEnv();
+        env.initModel(new String[] {"layout=pdf", "percepts=" + percepts});
+        model = env.model();
+        env.updatePercepts();
+    }
+
+    private void placeAgent(int X, int Y) {
+        model.setAgPos(0, model.ix(X), model.iy(Y));
+    }
+
+    @Benchmark
+    public void updatePercepts() {
+        env.updatePercepts();
+    }
+
+    @Benchmark
+    public boolean noop() {
+        return env.executeAction(GridEnv.AG_NAME, noop);
+    }
+
+    @Benchmark
+    public boolean moveUpDown() {
+        placeAgent(1, 1);
+        env.executeAction(GridEnv.AG_NAME, up);
+        return env.executeAction(GridEnv.AG_NAME, down);
+    }
+
+    @Benchmark
+    public boolean moveToXY() {
+        placeAgent(1, 1);
+        env.executeAction(GridEnv.AG_NAME, towards);
+        return env.executeAction(GridEnv.AG_NAME, back);
+    }
+
+    @Benchmark
+    public boolean pickDrop() {
+        placeAgent(1, 5);
+        env.executeAction(GridEnv.AG_NAME, pick);
+        return env.executeAction(GridEnv.AG_NAME, drop);
+    }
+
+    @Benchmark
+    public boolean paint() {
+        placeAgent(5, 1);
+        model.setCarrying(0, GridEnv.BRUSH | GridEnv.COLOR, true);
+        return env.executeAction(GridEnv.AG_NAME, paint);
+    }
+
+    @Benchmark
+    public boolean open() {
+        placeAgent(3, 2);
+        model.setCarrying(0, GridEnv.KEY | GridEnv.CODE, true);
+        return env.executeAction(GridEnv.AG_NAME, open);
+    }
+}
@@ -0,0 +1,77 @@
+package env;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jason.environment.grid.Location;
+
+//GridModel queries in both storage modes: blockedGrid (cached and rebuilt after an obstacle change),
+//object enumeration and occupancy tests.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridModelBenchmark {
+
+    @Param({"pdf", "random:64x64:0.2:1", "random:512x512:0.2:1"})
+    String layout;
+
+    @Param({"ARRAY", "BITBOARD"})
+    GridEnv.GridModel.Storage storage;
+
+    private GridEnv.GridModel model;
+    private int freeX, freeY; // empty cell used to invalidate the obstacle grid
+
+    @Setup
+    public void setup() throws Exception {
+        model = new GridEnv.GridModel(Layout.fromSpec(layout), storage);
+        model.resetToLayout();
+        Location a = model.getAgPos(0);
+        for (int y = 0; y < model.getHeight(); y++) {
+            for (int x = 0; x < model.getWidth(); x++) {
+                if (!model.hasObject(GridEnv.GridModel.ALL_OBJECTS, x, y) && (x != a.x || y != a.y)) {
+                    freeX = x;
+                    freeY = y;
+                    return;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean[][] blockedGridCached() {
+        return model.blockedGrid();
+    }
+
+    @Benchmark
+    public boolean[][] blockedGridRebuild() {
+        model.add(GridEnv.OBST, freeX, freeY);
+        model.remove(GridEnv.OBST, freeX, freeY);
+        return model.blockedGrid();
+    }
+
+    @Benchmark
+    public List<Location> occupiedLocations() {
+        return model.getOccupiedLocationsWithMask(GridEnv.BRUSH);
+    }
+
+    @Benchmark
+    public boolean canMoveAgentTo() {
+        return model.canMoveAgentTo(freeX, freeY);
+    }
+}
@@ -0,0 +1,69 @@
+package env;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jason.environment.grid.Location;
+
+//PathFinding.findPath (uncached) across grid sizes, obstacle densities and engines.
+//The query goes from the agent start to the farthest object of a generated layout.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathFindingBenchmark {
+
+    @Param({"5", "64", "256"})
+    int size;
+
+    @Param({"0.0", "0.2", "0.35"})
+    double density;
+
+    @Param({"GRID", "JGRAPHT"})
+    PathFinding.Engine engine;
+
+    private boolean[][] blocked;
+    private int sx, sy, gx, gy;
+
+    @Setup
+    public void setup() {
+        GridEnv.GridModel m = new GridEnv.GridModel(LayoutGenerator.generate(42, size, size, density));
+        m.resetToLayout();
+        blocked = m.blockedGrid();
+
+        Location a = m.getAgPos(0);
+        sx = a.x;
+        sy = a.y;
+        int best = -1;
+        for (int mask : new int[] {GridEnv.BRUSH, GridEnv.KEY, GridEnv.CODE, GridEnv.COLOR,
+                                   GridEnv.TABLE, GridEnv.CHAIR, GridEnv.DOOR}) {
+            int d = m.distanceToObject(sx, sy, mask);
+            if (d != DistanceOracle.UNREACHABLE && d > best) {
+                best = d;
+                Location o = m.objectLocation(mask);
+                gx = o.x;
+                gy = o.y;
+            }
+        }
+    }
+
+    @Benchmark
+    public List<PathFinding.Cell> findPath() {
+        return PathFinding.findPath(sx, sy, gx, gy, blocked, engine);
+    }
+}